@@ -0,0 +1,134 @@
+package com.example.aspect;
+
+import com.example.config.ConfigProps;
+import com.example.service.ConfigSnapshotHolder;
+import com.example.service.DynamicConfigMetrics;
+import com.example.service.FlagRule;
+import com.example.service.FlagRuleHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DynamicConfigAspectBenchmark {
+
+  @Param({"false", "true"})
+  private boolean overrideHeader;
+
+  @Param({"false", "true"})
+  private boolean flagRules;
+
+  @Param({"0", "0.01", "1"})
+  private double metricsSampleRate;
+
+  private FeatureConfig plainConfig;
+  private FeatureConfig proxiedConfig;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ConfigProps configProps = new ConfigProps();
+    configProps.setRequestScopeEnabled(true);
+    configProps.setMetricsSampleRate(metricsSampleRate);
+    DynamicConfigAspect aspect = new DynamicConfigAspect();
+    ReflectionTestUtils.setField(aspect, "configProps", configProps);
+    ReflectionTestUtils.setField(aspect, "snapshotHolder", new ConfigSnapshotHolder());
+    FlagRuleHolder flagRuleHolder = new FlagRuleHolder();
+    ReflectionTestUtils.setField(aspect, "flagRuleHolder", flagRuleHolder);
+    DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
+    ReflectionTestUtils.setField(aspect, "metrics", metrics);
+
+    plainConfig = new FeatureConfig();
+    AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new FeatureConfig());
+    proxyFactory.setProxyTargetClass(true);
+    proxyFactory.addAspect(aspect);
+    proxiedConfig = proxyFactory.getProxy();
+
+    if (flagRules) {
+      FlagRule regionRule = new FlagRule();
+      regionRule.setAttribute("region");
+      regionRule.setIn(Arrays.asList("EU", "UK"));
+      regionRule.setValue("true");
+      FlagRule percentageRule = new FlagRule();
+      percentageRule.setHashBy("userId");
+      percentageRule.setPercentage(5d);
+      percentageRule.setValue("true");
+      Map<String, List<FlagRule>> rules = new HashMap<>();
+      rules.put("FeatureConfig.featureEnabled", Arrays.asList(regionRule, percentageRule));
+      FlagRule retryRule = new FlagRule();
+      retryRule.setHashBy("userId");
+      retryRule.setPercentage(50d);
+      retryRule.setValue("5");
+      rules.put("FeatureConfig.retryCount", Collections.singletonList(retryRule));
+      ReflectionTestUtils.invokeMethod(flagRuleHolder, "publish", rules);
+    }
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (overrideHeader) {
+      request.addHeader("featureenabled", "true");
+      request.addHeader("retrycount", "7");
+    }
+    request.addHeader("region", "US");
+    request.addHeader("userId", "user-42");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Benchmark
+  public boolean plainBooleanGetter() {
+    return plainConfig.isFeatureEnabled();
+  }
+
+  @Benchmark
+  public boolean proxiedBooleanGetter() {
+    return proxiedConfig.isFeatureEnabled();
+  }
+
+  @Benchmark
+  public int proxiedIntGetter() {
+    return proxiedConfig.getRetryCount();
+  }
+
+  @EnableDynamicConfig
+  public static class FeatureConfig {
+
+    private boolean featureEnabled;
+    private int retryCount = 3;
+
+    public boolean isFeatureEnabled() {
+      return featureEnabled;
+    }
+
+    public int getRetryCount() {
+      return retryCount;
+    }
+  }
+
+}
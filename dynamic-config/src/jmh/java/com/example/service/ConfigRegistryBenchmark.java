@@ -0,0 +1,98 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigRegistryBenchmark {
+
+  @Param({"10", "500", "1500"})
+  private int beanCount;
+
+  private GenericApplicationContext context;
+  private DynamicConfigService service;
+  private int counter;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = new GenericApplicationContext();
+    for (int i = 0; i < beanCount; i++) {
+      context.registerBean("plainBean" + i, PlainBean.class);
+    }
+    context.registerBean("benchmarkConfig", BenchmarkConfig.class);
+    context.refresh();
+
+    ConfigProps configProps = new ConfigProps();
+    configProps.setBasePackage("com.example");
+    service = new DynamicConfigService();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    ReflectionTestUtils.setField(service, "applicationContext", context);
+    ReflectionTestUtils.setField(service, "configurableEnvironment", new StandardEnvironment());
+    ReflectionTestUtils.setField(service, "snapshotHolder", new ConfigSnapshotHolder());
+    service.onContextRefreshed(new ContextRefreshedEvent(context));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Map<String, Object> getConfig() {
+    return service.getConfig(false);
+  }
+
+  @Benchmark
+  public boolean updateConfig() {
+    return service.updateConfig("BenchmarkConfig.timeout", Integer.toString(++counter & 0xFFFF));
+  }
+
+  @Benchmark
+  public void rebuildRegistry() {
+    service.onContextRefreshed(new ContextRefreshedEvent(context));
+  }
+
+  public static class PlainBean {
+
+    private String name = "plain";
+
+    public String getName() {
+      return name;
+    }
+  }
+
+  @Configuration
+  public static class BenchmarkConfig {
+
+    private boolean featureEnabled = true;
+    private int timeout = 1000;
+    private long maxSize = 1024L;
+    private String mode = "default";
+    private double ratio = 0.5d;
+  }
+
+}
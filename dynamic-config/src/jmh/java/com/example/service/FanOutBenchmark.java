@@ -0,0 +1,136 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import com.example.config.RestClientConfig;
+import com.netflix.appinfo.InstanceInfo;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FanOutBenchmark {
+
+  private static final byte[] STUB_RESPONSE = "{\"StubConfig.featureEnabled\":true}".getBytes(StandardCharsets.UTF_8);
+
+  @Param({"1", "10", "60"})
+  private int instanceCount;
+
+  @Param({"0", "20"})
+  private int latencyMillis;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+  private DynamicConfigService service;
+  private List<ServiceInstance> instances;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    //without TCP_NODELAY the stub answers are held back by delayed ACKs and dominate the measurement
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    serverExecutor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+    server.createContext("/", exchange -> {
+      if (latencyMillis > 0) {
+        try {
+          Thread.sleep(latencyMillis);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, STUB_RESPONSE.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(STUB_RESPONSE);
+      }
+    });
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    ConfigProps configProps = new ConfigProps();
+    configProps.setMaxTotalConnections(128);
+    configProps.setMaxConnectionsPerRoute(64);
+    configProps.setKeepAlive(60000);
+    configProps.setIdleConnectionTimeout(30000);
+    configProps.setReadTimeout(2000);
+    configProps.setConnectionTimeout(1000);
+    configProps.setFanOutParallelism(64);
+    configProps.setFanOutTimeout(10000);
+
+    RestClientConfig restClientConfig = new RestClientConfig();
+    ReflectionTestUtils.setField(restClientConfig, "configProps", configProps);
+    connectionManager = restClientConfig.dynamicConfigConnectionManager();
+    httpClient = restClientConfig.dynamicConfigHttpClient(connectionManager);
+
+    service = new DynamicConfigService();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    ReflectionTestUtils.setField(service, "connectionManager", connectionManager);
+    ReflectionTestUtils.setField(service, "restTemplate", restClientConfig.dynamicConfigRestTemplate(httpClient));
+    service.init();
+
+    String homePageUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    instances = new ArrayList<>();
+    for (int i = 0; i < instanceCount; i++) {
+      instances.add(new EurekaServiceInstance(InstanceInfo.Builder.newBuilder()
+          .setAppName("STUB-SERVICE")
+          .setInstanceId("stub-" + i)
+          .setIPAddr("127.0.0.1")
+          .setHostName("127.0.0.1")
+          .setHomePageUrl(null, homePageUrl)
+          .build()));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    service.destroy();
+    httpClient.close();
+    connectionManager.shutdown();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Benchmark
+  public Map<String, InstanceResponse> getConfig() {
+    return service.executeOnInstances("v1/config/stub-service", HttpMethod.GET, null, instances, "getConfig");
+  }
+
+  @Benchmark
+  public Map<String, InstanceResponse> updateConfig() {
+    return service.executeOnInstances("v1/config/stub-service", HttpMethod.PUT,
+        "StubConfig.featureEnabled:true", instances, "updateConfig");
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverrideJournalBenchmark {
+
+  @Param({"10000", "50000"})
+  private int records;
+
+  private Path directory;
+  private ConfigProps configProps;
+  private OverrideJournal journal;
+  private int counter;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("override-journal-benchmark");
+    configProps = new ConfigProps();
+    configProps.setJournalPath(directory.toString());
+    configProps.setJournalSyncInterval(200);
+    configProps.setJournalCompactThreshold(Integer.MAX_VALUE);
+    journal = newJournal();
+    for (int i = 0; i < records; i++) {
+      journal.onConfigUpdated(event("BenchmarkConfig.key" + (i % 100), Integer.toString(i)));
+    }
+    journal.sync();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    journal.destroy();
+    FileSystemUtils.deleteRecursively(directory.toFile());
+  }
+
+  @Benchmark
+  public void append() {
+    journal.onConfigUpdated(event("BenchmarkConfig.timeout", Integer.toString(++counter & 0xFFFF)));
+  }
+
+  @Benchmark
+  public Map<String, String> load() throws IOException {
+    OverrideJournal loaded = newJournal();
+    try {
+      return loaded.getOverrides();
+    } finally {
+      loaded.destroy();
+    }
+  }
+
+  private OverrideJournal newJournal() throws IOException {
+    OverrideJournal newJournal = new OverrideJournal();
+    ReflectionTestUtils.setField(newJournal, "configProps", configProps);
+    newJournal.init();
+    return newJournal;
+  }
+
+  private static ConfigUpdatedEvent event(String key, String value) {
+    return new ConfigUpdatedEvent(OverrideJournalBenchmark.class, Collections.singletonMap(key, value), 0L);
+  }
+
+}
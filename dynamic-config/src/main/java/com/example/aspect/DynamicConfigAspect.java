@@ -1,20 +1,38 @@
 package com.example.aspect;
 
 import com.example.config.ConfigProps;
+import com.example.service.ConfigSnapshot;
+import com.example.service.ConfigSnapshotHolder;
+import com.example.service.DynamicConfigMetrics;
+import com.example.service.FlagRule;
+import com.example.service.FlagRuleHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.beans.PropertyEditor;
-import java.beans.PropertyEditorManager;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -23,33 +41,182 @@ import javax.servlet.http.HttpServletRequest;
 @Component
 public class DynamicConfigAspect {
 
-  private static final String REGEX = "get|is";
+  private final ConcurrentMap<Method, DynamicProperty> properties = new ConcurrentHashMap<>();
+
+  private volatile Map<String, List<DynamicProperty>> propertiesByHeader = Collections.emptyMap();
+
+  private volatile long propertiesVersion;
+
+  private volatile FlagRules flagRules = FlagRules.EMPTY;
 
   @Autowired
   private ConfigProps configProps;
 
+  @Autowired
+  private ConfigSnapshotHolder snapshotHolder;
+
+  @Autowired
+  private FlagRuleHolder flagRuleHolder;
+
+  @Autowired
+  private DynamicConfigMetrics metrics;
+
   @Around("@within(EnableDynamicConfig) && (execution(* get*(..)) || execution(* is*(..)))")
   public Object dynamicConfigChange(ProceedingJoinPoint joinPoint) throws Throwable {
+    DynamicProperty property = getProperty(((MethodSignature) joinPoint.getSignature()).getMethod());
+    long start = metrics.sample() ? System.nanoTime() : 0L;
+    String source = DynamicConfigMetrics.SOURCE_DEFAULT;
+    Object value = null;
+    RequestOverrides overrides = null;
+    if (configProps.isRequestScopeEnabled()) {
+      overrides = getRequestOverrides();
+      if (!overrides.isEmpty()) {
+        value = overrides.get(property);
+        source = DynamicConfigMetrics.SOURCE_HEADER;
+      }
+    }
+    if (value == null) {
+      FlagRules currentRules = getFlagRules();
+      if (!currentRules.isEmpty()) {
+        if (overrides == null) {
+          overrides = getRequestOverrides();
+        }
+        value = overrides.evaluate(currentRules, property);
+        source = DynamicConfigMetrics.SOURCE_RULE;
+      }
+    }
+    if (value == null && property.getFieldKey() != null) {
+      //a getter returning the field reads the published snapshot, so related keys are seen all old or all new
+      ConfigSnapshot snapshot = overrides != null && overrides.getSnapshot() != null
+          ? overrides.getSnapshot() : snapshotHolder.getSnapshot();
+      value = snapshot.get(property.getFieldKey());
+      source = DynamicConfigMetrics.SOURCE_SNAPSHOT;
+    }
+    if (value == null) {
+      source = DynamicConfigMetrics.SOURCE_DEFAULT;
+    }
+    if (start != 0L) {
+      metrics.recordGetter(property.getConfigKey(), source, System.nanoTime() - start);
+    }
+    return value != null ? value : joinPoint.proceed();
+  }
+
+  @EventListener
+  public void onContextRefreshed(ContextRefreshedEvent event) {
+    event.getApplicationContext().getBeansWithAnnotation(EnableDynamicConfig.class).values()
+        .forEach(bean -> registerProperties(AopUtils.getTargetClass(bean)));
+  }
+
+  RequestOverrides getRequestOverrides() {
+    RequestOverrides overrides = RequestOverrides.getDetached();
+    if (overrides != null) {
+      return overrides;
+    }
+    RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+    long version = propertiesVersion;
+    if (!(requestAttributes instanceof ServletRequestAttributes)) {
+      return RequestOverrides.empty(version);
+    }
+    FlagRules currentRules = getFlagRules();
     try {
-      if (configProps.isRequestScopeEnabled() && RequestContextHolder.getRequestAttributes() != null) {
-        HttpServletRequest request =
-            ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest();
-        String prop = joinPoint.getSignature().getName().replaceFirst(REGEX, "").toLowerCase();
-        if (request != null && request.getHeader(prop) != null) {
-          String propValue = request.getHeader(prop);
-          Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
-          PropertyEditor editor = PropertyEditorManager.findEditor(method.getReturnType());
-          editor.setAsText(propValue);
-          log.info("op=dynamicConfigChange, status=OK, desc=updating config for: {} to: {}", prop, propValue);
-          return editor.getValue();
-        } else {
-          return joinPoint.proceed();
+      overrides = (RequestOverrides) requestAttributes.getAttribute(
+          RequestOverrides.ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+      if (overrides == null || overrides.getVersion() != version || overrides.getFlagRules() != currentRules) {
+        overrides = createRequestOverrides(
+            ((ServletRequestAttributes) requestAttributes).getRequest(), version, currentRules);
+        requestAttributes.setAttribute(RequestOverrides.ATTRIBUTE_NAME, overrides, RequestAttributes.SCOPE_REQUEST);
+      }
+      return overrides;
+    } catch (IllegalStateException ex) {
+      //request already completed, e.g. a getter called from a task that outlived the request
+      return RequestOverrides.empty(version);
+    }
+  }
+
+  FlagRules getFlagRules() {
+    FlagRules current = flagRules;
+    Map<String, List<FlagRule>> rules = flagRuleHolder.getRules();
+    long version = propertiesVersion;
+    if (current.isCompiledFrom(rules, version)) {
+      return current;
+    }
+    synchronized (this) {
+      current = flagRules;
+      if (!current.isCompiledFrom(rules, version)) {
+        current = FlagRules.compile(rules, properties.values(), version);
+        flagRules = current;
+      }
+      return current;
+    }
+  }
+
+  private RequestOverrides createRequestOverrides(HttpServletRequest request, long version, FlagRules currentRules) {
+    String[] attributeNames = currentRules.getAttributes();
+    String[] attributes = new String[attributeNames.length];
+    for (int i = 0; i < attributeNames.length; i++) {
+      attributes[i] = request.getHeader(attributeNames[i]);
+    }
+    Map<DynamicProperty, Object> values = new HashMap<>();
+    Enumeration<String> headerNames = configProps.isRequestScopeEnabled() ? request.getHeaderNames() : null;
+    Map<String, List<DynamicProperty>> headerProperties = propertiesByHeader;
+    while (headerNames != null && headerNames.hasMoreElements()) {
+      String headerName = headerNames.nextElement();
+      List<DynamicProperty> matches = headerProperties.get(headerName.toLowerCase(Locale.ENGLISH));
+      if (matches != null) {
+        String propValue = request.getHeader(headerName);
+        for (DynamicProperty property : matches) {
+          try {
+            values.put(property, property.convert(propValue));
+            log.debug("op=dynamicConfigChange, status=OK, desc=updating config for: {} to: {}", headerName, propValue);
+          } catch (Exception ex) {
+            log.warn("op=dynamicConfigChange, status=KO, desc=config update failed for: {}, error={}",
+                headerName, ExceptionUtils.getMessage(ex));
+          }
+        }
+      }
+    }
+    //the request keeps reading the snapshot it started with
+    return new RequestOverrides(values, version, currentRules, attributes, snapshotHolder.getSnapshot());
+  }
+
+  private DynamicProperty getProperty(Method method) {
+    DynamicProperty property = properties.get(method);
+    return property != null ? property : registerProperty(method);
+  }
+
+  private void registerProperties(Class<?> targetClass) {
+    for (Class<?> type = targetClass; type != null && type != Object.class; type = type.getSuperclass()) {
+      if (AnnotationUtils.isAnnotationDeclaredLocally(EnableDynamicConfig.class, type)) {
+        for (Method method : type.getDeclaredMethods()) {
+          if (isGetter(method)) {
+            registerProperty(method);
+          }
         }
       }
-    } catch (Throwable ex) {
-      log.warn("op=dynamicConfigChange, status=KO, desc=config update failed, error={}", ExceptionUtils.getMessage(ex));
     }
-    return joinPoint.proceed();
+  }
+
+  private synchronized DynamicProperty registerProperty(Method method) {
+    DynamicProperty property = properties.get(method);
+    if (property == null) {
+      property = DynamicProperty.of(method);
+      properties.put(method, property);
+      Map<String, List<DynamicProperty>> headerProperties = new HashMap<>(propertiesByHeader);
+      List<DynamicProperty> matches = new ArrayList<>(
+          headerProperties.getOrDefault(property.getHeaderName(), Collections.emptyList()));
+      matches.add(property);
+      headerProperties.put(property.getHeaderName(), matches);
+      propertiesByHeader = headerProperties;
+      propertiesVersion++;
+    }
+    return property;
+  }
+
+  private static boolean isGetter(Method method) {
+    String name = method.getName();
+    return Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())
+        && !method.isSynthetic() && method.getReturnType() != void.class
+        && (name.startsWith("get") || name.startsWith("is"));
   }
 
 }
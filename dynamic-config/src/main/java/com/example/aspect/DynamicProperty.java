@@ -0,0 +1,184 @@
+package com.example.aspect;
+
+import com.example.editor.ValueConverter;
+import com.example.editor.ValueConverters;
+import lombok.Getter;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.Handle;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.asm.Type;
+import org.springframework.util.ClassUtils;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+
+@Getter
+final class DynamicProperty {
+
+  private final String headerName;
+  private final String configKey;
+  private final String fieldKey;
+  private final ValueConverter converter;
+
+  private DynamicProperty(String headerName, String configKey, String fieldKey, ValueConverter converter) {
+    this.headerName = headerName;
+    this.configKey = configKey;
+    this.fieldKey = fieldKey;
+    this.converter = converter;
+  }
+
+  static DynamicProperty of(Method method) {
+    String name = method.getName();
+    String propertyName = name.startsWith("get") ? name.substring(3) : name.substring(2);
+    return new DynamicProperty(propertyName.toLowerCase(Locale.ENGLISH),
+        method.getDeclaringClass().getSimpleName() + "." + Introspector.decapitalize(propertyName),
+        findFieldKey(method), ValueConverters.forType(method.getGenericReturnType()));
+  }
+
+  Object convert(String text) {
+    return converter.convert(text);
+  }
+
+  /**
+   * The key of the field the getter returns when its body is only {@code return this.field;}, so the value can be
+   * served from the published snapshot; {@code null} for getters that derive, default or copy their value.
+   */
+  private static String findFieldKey(Method method) {
+    Class<?> type = method.getDeclaringClass();
+    ClassLoader classLoader = type.getClassLoader() != null ? type.getClassLoader() : ClassUtils.getDefaultClassLoader();
+    try (InputStream classFile = classLoader.getResourceAsStream(ClassUtils.convertClassNameToResourcePath(
+        type.getName()) + ClassUtils.CLASS_FILE_SUFFIX)) {
+      if (classFile == null) {
+        return null;
+      }
+      FieldReadFinder finder = new FieldReadFinder(method, Type.getInternalName(type));
+      new ClassReader(classFile).accept(finder, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+      if (finder.fieldName == null) {
+        return null;
+      }
+      Field field = type.getDeclaredField(finder.fieldName);
+      return Modifier.isStatic(field.getModifiers()) ? null : type.getSimpleName() + "." + field.getName();
+    } catch (IOException | NoSuchFieldException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static final class FieldReadFinder extends ClassVisitor {
+
+    private final String methodName;
+    private final String methodDescriptor;
+    private final String owner;
+    private String fieldName;
+
+    private FieldReadFinder(Method method, String owner) {
+      super(SpringAsmInfo.ASM_VERSION);
+      this.methodName = method.getName();
+      this.methodDescriptor = Type.getMethodDescriptor(method);
+      this.owner = owner;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+        String[] exceptions) {
+      return methodName.equals(name) && methodDescriptor.equals(descriptor) ? new GetterVisitor() : null;
+    }
+
+    /**
+     * Accepts exactly {@code ALOAD 0, GETFIELD owner.field, xRETURN}; any other instruction rejects the getter.
+     */
+    private final class GetterVisitor extends MethodVisitor {
+
+      private int step;
+      private String candidate;
+
+      private GetterVisitor() {
+        super(SpringAsmInfo.ASM_VERSION);
+      }
+
+      @Override
+      public void visitVarInsn(int opcode, int var) {
+        step = step == 0 && opcode == Opcodes.ALOAD && var == 0 ? 1 : -1;
+      }
+
+      @Override
+      public void visitFieldInsn(int opcode, String fieldOwner, String name, String descriptor) {
+        step = step == 1 && opcode == Opcodes.GETFIELD && owner.equals(fieldOwner) ? 2 : -1;
+        candidate = name;
+      }
+
+      @Override
+      public void visitInsn(int opcode) {
+        step = step == 2 && opcode >= Opcodes.IRETURN && opcode <= Opcodes.ARETURN ? 3 : -1;
+      }
+
+      @Override
+      public void visitIntInsn(int opcode, int operand) {
+        step = -1;
+      }
+
+      @Override
+      public void visitTypeInsn(int opcode, String type) {
+        step = -1;
+      }
+
+      @Override
+      public void visitMethodInsn(int opcode, String methodOwner, String name, String descriptor,
+          boolean isInterface) {
+        step = -1;
+      }
+
+      @Override
+      public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+          Object... bootstrapMethodArguments) {
+        step = -1;
+      }
+
+      @Override
+      public void visitJumpInsn(int opcode, Label label) {
+        step = -1;
+      }
+
+      @Override
+      public void visitLdcInsn(Object value) {
+        step = -1;
+      }
+
+      @Override
+      public void visitIincInsn(int var, int increment) {
+        step = -1;
+      }
+
+      @Override
+      public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        step = -1;
+      }
+
+      @Override
+      public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        step = -1;
+      }
+
+      @Override
+      public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        step = -1;
+      }
+
+      @Override
+      public void visitEnd() {
+        if (step == 3) {
+          fieldName = candidate;
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,168 @@
+package com.example.aspect;
+
+import com.example.service.FlagRule;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Flag rules compiled against the registered getters. Request headers used by the rules are captured once per
+ * request into a slot array, evaluating a getter then only walks the pre-converted rules of its property.
+ */
+@Slf4j
+final class FlagRules {
+
+  static final int BUCKETS = 10000;
+
+  static final FlagRules EMPTY = new FlagRules(Collections.emptyMap(), 0, new String[0], new IdentityHashMap<>());
+
+  private final Map<String, List<FlagRule>> source;
+  private final long version;
+  private final String[] attributes;
+  private final Map<DynamicProperty, Rule[]> rules;
+
+  private FlagRules(Map<String, List<FlagRule>> source, long version, String[] attributes,
+      Map<DynamicProperty, Rule[]> rules) {
+    this.source = source;
+    this.version = version;
+    this.attributes = attributes;
+    this.rules = rules;
+  }
+
+  static FlagRules compile(Map<String, List<FlagRule>> source, Collection<DynamicProperty> properties, long version) {
+    Map<String, Integer> slots = new LinkedHashMap<>();
+    Map<DynamicProperty, Rule[]> compiled = new IdentityHashMap<>();
+    for (DynamicProperty property : properties) {
+      List<FlagRule> flagRules = source.get(property.getConfigKey());
+      if (flagRules == null) {
+        continue;
+      }
+      List<Rule> propertyRules = new ArrayList<>();
+      for (FlagRule flagRule : flagRules) {
+        try {
+          if (StringUtils.isEmpty(flagRule.getHashBy()) != (flagRule.getPercentage() == null)) {
+            throw new RuntimeException("Oops! A rule needs hashBy and percentage together."); //NOPMD
+          }
+          propertyRules.add(new Rule(
+              slot(slots, flagRule.getAttribute()),
+              flagRule.getIn() == null ? Collections.emptySet() : new HashSet<>(flagRule.getIn()),
+              slot(slots, flagRule.getHashBy()),
+              flagRule.getPercentage() == null ? BUCKETS : (int) Math.round(flagRule.getPercentage() * 100),
+              property.getConfigKey().hashCode(),
+              property.convert(flagRule.getValue())));
+        } catch (Exception ex) {
+          log.warn("op=compileFlagRules, status=KO, key={}, error={}",
+              property.getConfigKey(), ExceptionUtils.getMessage(ex));
+        }
+      }
+      if (!propertyRules.isEmpty()) {
+        compiled.put(property, propertyRules.toArray(new Rule[0]));
+      }
+    }
+    return new FlagRules(source, version, slots.keySet().toArray(new String[0]), compiled);
+  }
+
+  private static int slot(Map<String, Integer> slots, String attribute) {
+    if (StringUtils.isEmpty(attribute)) {
+      return -1;
+    }
+    return slots.computeIfAbsent(attribute.toLowerCase(Locale.ENGLISH), key -> slots.size());
+  }
+
+  boolean isEmpty() {
+    return rules.isEmpty();
+  }
+
+  boolean isCompiledFrom(Map<String, List<FlagRule>> rulesSource, long propertiesVersion) {
+    return source == rulesSource && version == propertiesVersion;
+  }
+
+  String[] getAttributes() {
+    return attributes;
+  }
+
+  Object evaluate(DynamicProperty property, String[] attributeValues) {
+    Rule[] propertyRules = rules.get(property);
+    if (propertyRules == null) {
+      return null;
+    }
+    for (Rule rule : propertyRules) {
+      if (rule.matches(attributeValues)) {
+        return rule.value;
+      }
+    }
+    return null;
+  }
+
+  static int bucket(int seed, String text) {
+    //murmur3 over the chars of the text, the bucket of a value stays the same while the percentage is raised
+    int h1 = seed;
+    int length = text.length();
+    for (int i = 1; i < length; i += 2) {
+      h1 = mixH1(h1, mixK1(text.charAt(i - 1) | (text.charAt(i) << 16)));
+    }
+    if ((length & 1) == 1) {
+      h1 ^= mixK1(text.charAt(length - 1));
+    }
+    h1 ^= 2 * length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return (h1 & 0x7fffffff) % BUCKETS;
+  }
+
+  private static int mixK1(int k1) {
+    return Integer.rotateLeft(k1 * 0xcc9e2d51, 15) * 0x1b873593;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    return Integer.rotateLeft(h1 ^ k1, 13) * 5 + 0xe6546b64;
+  }
+
+  private static final class Rule {
+
+    private final int attributeSlot;
+    private final Set<String> allowed;
+    private final int hashSlot;
+    private final int threshold;
+    private final int seed;
+    private final Object value;
+
+    private Rule(int attributeSlot, Set<String> allowed, int hashSlot, int threshold, int seed, Object value) {
+      this.attributeSlot = attributeSlot;
+      this.allowed = allowed;
+      this.hashSlot = hashSlot;
+      this.threshold = threshold;
+      this.seed = seed;
+      this.value = value;
+    }
+
+    private boolean matches(String[] attributeValues) {
+      if (attributeSlot >= 0) {
+        String attributeValue = attributeValues[attributeSlot];
+        if (attributeValue == null || !allowed.contains(attributeValue)) {
+          return false;
+        }
+      }
+      if (hashSlot >= 0) {
+        String hashValue = attributeValues[hashSlot];
+        return hashValue != null && bucket(seed, hashValue) < threshold;
+      }
+      return true;
+    }
+  }
+
+}
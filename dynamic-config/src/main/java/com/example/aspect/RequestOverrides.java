@@ -0,0 +1,74 @@
+package com.example.aspect;
+
+import com.example.service.ConfigSnapshot;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+final class RequestOverrides {
+
+  static final String ATTRIBUTE_NAME = RequestOverrides.class.getName();
+
+  private static final ThreadLocal<RequestOverrides> DETACHED_OVERRIDES = new ThreadLocal<>();
+
+  private final Map<DynamicProperty, Object> values;
+  private final long version;
+  private final FlagRules flagRules;
+  private final String[] attributes;
+  private final ConfigSnapshot snapshot;
+
+  RequestOverrides(Map<DynamicProperty, Object> values, long version, FlagRules flagRules, String[] attributes,
+      ConfigSnapshot snapshot) {
+    this.values = values.isEmpty() ? Collections.emptyMap() : new IdentityHashMap<>(values);
+    this.version = version;
+    this.flagRules = flagRules;
+    this.attributes = attributes;
+    this.snapshot = snapshot;
+  }
+
+  static RequestOverrides empty(long version) {
+    return new RequestOverrides(Collections.emptyMap(), version, FlagRules.EMPTY, new String[0], null);
+  }
+
+  static RequestOverrides getDetached() {
+    return DETACHED_OVERRIDES.get();
+  }
+
+  static void setDetached(RequestOverrides overrides) {
+    if (overrides == null) {
+      DETACHED_OVERRIDES.remove();
+    } else {
+      DETACHED_OVERRIDES.set(overrides);
+    }
+  }
+
+  boolean isEmpty() {
+    return values.isEmpty();
+  }
+
+  Object get(DynamicProperty property) {
+    return values.get(property);
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  FlagRules getFlagRules() {
+    return flagRules;
+  }
+
+  /**
+   * The snapshot published when the request started, {@code null} outside a request.
+   */
+  ConfigSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  Object evaluate(FlagRules currentRules, DynamicProperty property) {
+    //overrides captured for an older rule set have their attributes in other slots
+    return flagRules == currentRules ? flagRules.evaluate(property, attributes) : null;
+  }
+
+}
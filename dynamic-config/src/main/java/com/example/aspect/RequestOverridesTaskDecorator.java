@@ -0,0 +1,27 @@
+package com.example.aspect;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.stereotype.Component;
+
+@Component
+public class RequestOverridesTaskDecorator implements TaskDecorator {
+
+  @Autowired
+  private DynamicConfigAspect dynamicConfigAspect;
+
+  @Override
+  public Runnable decorate(Runnable runnable) {
+    RequestOverrides overrides = dynamicConfigAspect.getRequestOverrides();
+    return () -> {
+      RequestOverrides previous = RequestOverrides.getDetached();
+      RequestOverrides.setDetached(overrides);
+      try {
+        runnable.run();
+      } finally {
+        RequestOverrides.setDetached(previous);
+      }
+    };
+  }
+
+}
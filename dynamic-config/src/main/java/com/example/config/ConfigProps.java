@@ -18,11 +18,69 @@ public class ConfigProps {
   private boolean requestScopeEnabled;
   @Value("${dynamic-config.basePackage:com.jcpenney.dcp}")
   private String basePackage;
-  @Value("${dynamic-config.totalConnections:2}")
+  @Value("${dynamic-config.totalConnections:64}")
   private int maxTotalConnections;
+  @Value("${dynamic-config.maxConnectionsPerRoute:4}")
+  private int maxConnectionsPerRoute;
+  @Value("${dynamic-config.keepAlive:60000}")
+  private long keepAlive;
+  @Value("${dynamic-config.idleConnectionTimeout:30000}")
+  private long idleConnectionTimeout;
   @Value("${dynamic-config.readTimeout:2000}")
   private int readTimeout;
   @Value("${dynamic-config.connectionTimeout:1000}")
   private int connectionTimeout;
+  @Value("${dynamic-config.fanOutParallelism:16}")
+  private int fanOutParallelism;
+  @Value("${dynamic-config.fanOutTimeout:10000}")
+  private long fanOutTimeout;
+  @Value("${dynamic-config.fanOutBackend:blocking}")
+  private String fanOutBackend;
+  @Value("${dynamic-config.fanOutMaxInFlight:1024}")
+  private int fanOutMaxInFlight;
+  @Value("${dynamic-config.fanOutIoThreads:2}")
+  private int fanOutIoThreads;
+  @Value("${dynamic-config.fanOutRetries:2}")
+  private int fanOutRetries;
+  @Value("${dynamic-config.fanOutRetryBackoff:100}")
+  private long fanOutRetryBackoff;
+  @Value("${dynamic-config.fanOutHedgeDelay:1000}")
+  private long fanOutHedgeDelay;
+  @Value("${dynamic-config.circuitFailureThreshold:3}")
+  private int circuitFailureThreshold;
+  @Value("${dynamic-config.circuitOpenTime:30000}")
+  private long circuitOpenTime;
+  @Value("${dynamic-config.streamOnly:false}")
+  private boolean streamOnly;
+  @Value("${dynamic-config.streamUrl:#{null}}")
+  private String streamUrl;
+  @Value("${dynamic-config.streamHistorySize:1000}")
+  private int streamHistorySize;
+  @Value("${dynamic-config.streamTimeout:1800000}")
+  private long streamTimeout;
+  @Value("${dynamic-config.streamHeartbeatInterval:15000}")
+  private long streamHeartbeatInterval;
+  @Value("${dynamic-config.journalPath:#{null}}")
+  private String journalPath;
+  @Value("${dynamic-config.journalSyncInterval:200}")
+  private long journalSyncInterval;
+  @Value("${dynamic-config.journalCompactThreshold:10000}")
+  private int journalCompactThreshold;
+  @Value("${dynamic-config.catchUpUrl:#{null}}")
+  private String catchUpUrl;
+  @Value("${dynamic-config.catchUpFromPeers:false}")
+  private boolean catchUpFromPeers;
+  @Value("${dynamic-config.instanceCacheTtl:30000}")
+  private long instanceCacheTtl;
+  @Value("${dynamic-config.rolloutBakeTime:60000}")
+  private long rolloutBakeTime;
+  @Value("${dynamic-config.metricsSampleRate:0.01}")
+  private double metricsSampleRate;
+  @Value("${dynamic-config.sharedSnapshotPath:#{null}}")
+  private String sharedSnapshotPath;
+  @Value("${dynamic-config.sharedSnapshotSize:1048576}")
+  private int sharedSnapshotSize;
+  @Value("${dynamic-config.sharedSnapshotPollInterval:100}")
+  private long sharedSnapshotPollInterval;
 
 }
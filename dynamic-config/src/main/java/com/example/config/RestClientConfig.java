@@ -0,0 +1,67 @@
+package com.example.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class RestClientConfig {
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Bean(destroyMethod = "shutdown")
+  public PoolingHttpClientConnectionManager dynamicConfigConnectionManager() {
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(configProps.getKeepAlive(), TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(configProps.getMaxTotalConnections());
+    connectionManager.setDefaultMaxPerRoute(configProps.getMaxConnectionsPerRoute());
+    return connectionManager;
+  }
+
+  @Bean(destroyMethod = "close")
+  public CloseableHttpClient dynamicConfigHttpClient(
+      @Qualifier("dynamicConfigConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+    long keepAlive = configProps.getKeepAlive();
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(configProps.getConnectionTimeout())
+            .setSocketTimeout(configProps.getReadTimeout())
+            .setConnectionRequestTimeout(configProps.getConnectionTimeout())
+            .build())
+        .setKeepAliveStrategy((response, context) -> {
+          long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+        })
+        .evictExpiredConnections()
+        .evictIdleConnections(configProps.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  @Bean
+  public RestTemplate dynamicConfigRestTemplate(
+      @Qualifier("dynamicConfigHttpClient") CloseableHttpClient httpClient) {
+    HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(configProps.getReadTimeout());
+    requestFactory.setConnectTimeout(configProps.getConnectionTimeout());
+    RestTemplate restTemplate = new RestTemplate(requestFactory);
+    restTemplate.setErrorHandler(new DefaultResponseErrorHandler());
+    return restTemplate;
+  }
+
+}
@@ -5,20 +5,33 @@ import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
 import com.example.config.ConfigProps;
+import com.example.service.ConfigChange;
+import com.example.service.ConfigChangeFeed;
 import com.example.service.DynamicConfigService;
+import com.example.service.FlagRule;
+import com.example.service.InstanceResponse;
+import com.example.service.LogLevelService;
+import com.example.service.Rollout;
+import com.example.service.RolloutService;
+import com.example.service.ServiceInstanceCache;
+import com.example.service.SharedSnapshot;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.client.ServiceInstance;
-import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
 import org.springframework.hateoas.mvc.ControllerLinkBuilder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -27,12 +40,24 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -44,89 +69,501 @@ import javax.servlet.http.HttpServletRequest;
 public class DynamicConfigController {
 
   private static final String ANY_IP_ADDRESS = "ANY";
+  private static final String NDJSON_VALUE = "application/x-ndjson";
   private static final String LOG_OK_PATTERN = "op={}, status=OK, Client={}, ipAddress={}, serviceId={}, desc={}";
 
   @Autowired
   private ConfigProps configProps;
 
   @Autowired
-  private DiscoveryClient discoveryClient;
+  private ServiceInstanceCache instanceCache;
+
+  @Autowired
+  private RolloutService rolloutService;
+
+  @Autowired
+  private LogLevelService logLevelService;
 
   @Autowired
   private DynamicConfigService configService;
 
+  @Autowired
+  private ConfigChangeFeed changeFeed;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired(required = false)
+  private SharedSnapshot sharedSnapshot;
+
   @GetMapping(path = "/{serviceId}", produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Map<String, Object>> getConfig(HttpServletRequest request,
       @PathVariable("serviceId") String id,
       @RequestParam(value = "includeYml", required = false) boolean includeYml,
+      @RequestParam(value = "since", required = false) Long since,
+      @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch,
       @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
     String op = "getConfig";
     Map<String, Object> response;
+    String etag;
 
     if (isSlave) {
-      response = configService.getConfig(includeYml);
+      //a revision is only meaningful to the run of the instance that issued the ETag, otherwise send everything
+      Long baseline = since != null && configService.isIssuedHere(ifNoneMatch) ? since : null;
+      etag = configService.getConfigETag(includeYml, baseline);
+      if (isNotModified(ifNoneMatch, etag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+      }
+      response = configService.getConfig(includeYml, baseline);
     } else {
       log.info(LOG_OK_PATTERN, op, getClientIp(request), id, "Getting all configs");
       List<ServiceInstance> ultimateInstances = getUltimateInstances(id, ANY_IP_ADDRESS);
-      String url = getUrl(linkTo(methodOn(this.getClass()).getConfig(request, id, includeYml, isSlave)), id);
-      response = configService.executeOnInstances(url, HttpMethod.GET, null, ultimateInstances, op);
+      String url = getUrl(linkTo(methodOn(this.getClass())
+          .getConfig(request, id, includeYml, since, null, isSlave)), id);
+      HttpHeaders headers = new HttpHeaders();
+      if (!StringUtils.isEmpty(ifNoneMatch)) {
+        headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+      }
+      Map<String, InstanceResponse> responses =
+          configService.executeOnInstances(url, HttpMethod.GET, null, headers, ultimateInstances, op);
+      etag = getAggregateETag(responses);
+      boolean instanceNotModified = responses.size() == 1
+          && responses.values().iterator().next().getHttpStatus() == HttpStatus.NOT_MODIFIED.value();
+      if (instanceNotModified || isNotModified(ifNoneMatch, etag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+      }
+      response = new TreeMap<>(responses);
+    }
+
+    return etag != null ? ResponseEntity.ok().eTag(etag).body(response) : new ResponseEntity<>(response, HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/{serviceId}", produces = NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamConfig(HttpServletRequest request,
+      @PathVariable("serviceId") String id,
+      @RequestParam(value = "includeYml", required = false) boolean includeYml,
+      @RequestParam(value = "since", required = false) Long since,
+      @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+    String op = "streamConfig";
+    log.info(LOG_OK_PATTERN, op, getClientIp(request), id, "Streaming all configs");
+    List<ServiceInstance> instances = getUltimateInstances(id, null);
+    String url = getUrl(linkTo(methodOn(this.getClass())
+        .getConfig(request, id, includeYml, since, null, false)), id);
+    //instances only honour since together with an ETag they issued
+    HttpHeaders headers = new HttpHeaders();
+    if (!StringUtils.isEmpty(ifNoneMatch)) {
+      headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    }
+
+    StreamingResponseBody body = outputStream -> {
+      try {
+        configService.executeOnInstances(url, HttpMethod.GET, null, headers, instances, op, response -> {
+          try {
+            outputStream.write(objectMapper.writeValueAsBytes(response));
+            outputStream.write('\n');
+            outputStream.flush();
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+      } catch (UncheckedIOException ex) {
+        throw ex.getCause();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+  }
+
+  @GetMapping(path = "/{serviceId}/diff", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> diffConfig(HttpServletRequest request,
+      @PathVariable("serviceId") String id,
+      @RequestParam(value = "keys", required = false) List<String> keys,
+      @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
+    String op = "diffConfig";
+    Map<String, Object> response;
+
+    if (isSlave) {
+      response = keys == null ? configService.getConfigDigest() : configService.getConfigValues(keys);
+    } else {
+      log.info(LOG_OK_PATTERN, op, getClientIp(request), id, "Comparing configs across instances");
+      List<ServiceInstance> ultimateInstances = getUltimateInstances(id, null);
+      String url = getUrl(linkTo(methodOn(this.getClass()).diffConfig(request, id, null, isSlave)), id);
+      response = configService.diffConfig(url, ultimateInstances, op);
     }
 
     return new ResponseEntity<>(response, HttpStatus.OK);
   }
 
+  @GetMapping(path = "/{serviceId}/overrides", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<ConfigChange> getOverrides(HttpServletRequest request,
+      @PathVariable("serviceId") String id,
+      @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
+    if (isSlave) {
+      return new ResponseEntity<>(configService.getOverrides(id), HttpStatus.OK);
+    }
+    log.info(LOG_OK_PATTERN, "getOverrides", getClientIp(request), id, "Catching up a new instance");
+    return new ResponseEntity<>(changeFeed.getLatest(id), HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/{serviceId}/rules", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> getFlagRules(HttpServletRequest request,
+      @PathVariable("serviceId") String id,
+      @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
+    if (isSlave) {
+      return new ResponseEntity<>(new TreeMap<>(configService.getFlagRules()), HttpStatus.OK);
+    }
+    String op = "getFlagRules";
+    log.info(LOG_OK_PATTERN, op, getClientIp(request), id, "Getting flag rules");
+    List<ServiceInstance> ultimateInstances = getUltimateInstances(id, ANY_IP_ADDRESS);
+    String url = getUrl(linkTo(methodOn(this.getClass()).getFlagRules(request, id, isSlave)), id);
+    return new ResponseEntity<>(
+        new TreeMap<>(configService.executeOnInstances(url, HttpMethod.GET, null, ultimateInstances, op)), HttpStatus.OK);
+  }
+
+  @PutMapping(path = "/{serviceId}/rules", consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_JSON_VALUE},
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity updateFlagRules(HttpServletRequest request,
+      @RequestBody String rules,
+      @PathVariable("serviceId") String id,
+      @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
+    String op = "updateFlagRules";
+    Map<String, List<FlagRule>> flagRules = extractFlagRules(rules);
+
+    if (isSlave) {
+      configService.updateFlagRules(flagRules);
+    } else {
+      log.info(LOG_OK_PATTERN, op, getClientIp(request), id, flagRules.keySet());
+      String url = getUrl(linkTo(methodOn(this.getClass()).updateFlagRules(request, rules, id, isSlave)), id);
+      return getFanOutResponse(configService.executeOnInstances(url, HttpMethod.PUT, rules,
+          getUltimateInstances(id, null), op));
+    }
+
+    return new ResponseEntity(HttpStatus.CREATED);
+  }
+
   @PutMapping(path = "/{serviceId}",
       consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity updateConfig(HttpServletRequest request,
       @RequestBody String prop,
       @PathVariable("serviceId") String id,
+      @RequestParam(value = "instanceId", required = false) String instanceId,
+      @RequestParam(value = "zone", required = false) String zone,
+      @RequestParam(value = "label", required = false) List<String> labels,
+      @RequestParam(value = "shared", required = false) Boolean shared,
+      @RequestParam(value = "dryRun", required = false) Boolean dryRun,
       @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
     String op = "updateConfig";
-    Map.Entry<String, String> entry = extractKeyAndValue(prop).entrySet().iterator().next();
+    Map<String, String> props = extractKeyAndValue(prop);
 
-    if (isSlave) {
-      configService.updateConfig(entry.getKey(), entry.getValue());
+    if (isSlave && Boolean.TRUE.equals(dryRun)) {
+      try {
+        configService.validateConfigs(props);
+      } catch (RuntimeException ex) {
+        log.info("op={}, status=KO, desc=Dry run rejected the update: {}", op, ex.getMessage());
+        return new ResponseEntity<>(Collections.singletonMap("error", ex.getMessage()), HttpStatus.BAD_REQUEST);
+      }
+      return new ResponseEntity(HttpStatus.OK);
+    } else if (isSlave) {
+      configService.updateConfigs(props);
+      if (Boolean.TRUE.equals(shared) && sharedSnapshot != null) {
+        sharedSnapshot.publish(props);
+      }
     } else {
       log.info(LOG_OK_PATTERN, op, getClientIp(request), id, prop);
-      List<ServiceInstance> ultimateInstances = getUltimateInstances(id, null);
-      String url = getUrl(linkTo(methodOn(this.getClass()).updateConfig(request, prop, id, isSlave)), id);
-      configService.executeOnInstances(url, HttpMethod.PUT, prop, ultimateInstances, op);
+      boolean targeted = !StringUtils.isEmpty(instanceId) || !StringUtils.isEmpty(zone) || !CollectionUtils.isEmpty(labels);
+      List<ServiceInstance> ultimateInstances;
+      if (targeted) {
+        //a change for a subset must not reach the other instances through the feed or the catch-up state
+        ultimateInstances = getTargetInstances(id, instanceId, zone, labels);
+      } else {
+        //nothing is published or sent when an instance of the service rejects the update
+        ultimateInstances = getUltimateInstances(id, null);
+        Map<String, InstanceResponse> rejections = getRejections(request, prop, id, ultimateInstances);
+        if (!rejections.isEmpty()) {
+          return new ResponseEntity<>(rejections, HttpStatus.BAD_REQUEST);
+        }
+        ConfigChange change = changeFeed.publish(id, props);
+        if (configProps.isStreamOnly()) {
+          return new ResponseEntity<>(change, HttpStatus.ACCEPTED);
+        }
+      }
+      String url = getUrl(linkTo(methodOn(this.getClass())
+          .updateConfig(request, prop, id, null, null, null, null, null, isSlave)), id);
+      if (targeted) {
+        return getFanOutResponse(configService.executeOnInstances(url, HttpMethod.PUT, prop, ultimateInstances, op));
+      }
+      return getFanOutResponse(updateOncePerSharedSnapshot(request, prop, id, url, ultimateInstances, op));
     }
 
     return new ResponseEntity(HttpStatus.CREATED);
   }
 
+  @PutMapping(path = "/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity updateConfigBatch(HttpServletRequest request, @RequestBody String batch) {
+    String op = "updateConfigBatch";
+    Map<String, Map<String, String>> propsByService = extractBatch(batch);
+    log.info(LOG_OK_PATTERN, op, getClientIp(request), propsByService.keySet(), batch);
+    //every service is resolved before anything is sent, an unknown one fails the whole batch
+    Map<String, List<ServiceInstance>> instancesByService = new LinkedHashMap<>();
+    propsByService.keySet().forEach(id -> instancesByService.put(id, getUltimateInstances(id, null)));
+    Map<String, Map<String, InstanceResponse>> rejections = new LinkedHashMap<>();
+    instancesByService.forEach((id, instances) -> {
+      Map<String, InstanceResponse> serviceRejections = getRejections(request, toProp(propsByService.get(id)), id,
+          instances);
+      if (!serviceRejections.isEmpty()) {
+        rejections.put(id, serviceRejections);
+      }
+    });
+    if (!rejections.isEmpty()) {
+      return new ResponseEntity<>(rejections, HttpStatus.BAD_REQUEST);
+    }
+
+    Map<String, ConfigChange> changes = new LinkedHashMap<>();
+    propsByService.forEach((id, props) -> changes.put(id, changeFeed.publish(id, props)));
+    if (configProps.isStreamOnly()) {
+      return new ResponseEntity<>(changes, HttpStatus.ACCEPTED);
+    }
+
+    //one fan-out for all services, every instance gets all the keys of its service in one request
+    Map<InstanceInfo, String> urls = new IdentityHashMap<>();
+    Map<InstanceInfo, String> props = new IdentityHashMap<>();
+    Map<String, String> serviceIds = new HashMap<>();
+    //as for a single service, one process per host and snapshot file applies the update for the others
+    Map<InstanceInfo, List<ServiceInstance>> followers = new IdentityHashMap<>();
+    List<ServiceInstance> targets = new ArrayList<>();
+    Map<String, Map<String, InstanceResponse>> responses = new LinkedHashMap<>();
+    instancesByService.forEach((id, instances) -> {
+      String prop = toProp(propsByService.get(id));
+      String url = getUrl(linkTo(methodOn(this.getClass())
+          .updateConfig(request, prop, id, null, null, null, null, null, false)), id);
+      String sharedUrl = getUrl(linkTo(methodOn(this.getClass())
+          .updateConfig(request, prop, id, null, null, null, Boolean.TRUE, null, false)), id);
+      List<ServiceInstance> serviceTargets = new ArrayList<>(instances);
+      instanceCache.groupBySharedSnapshot(instances).values().forEach(group -> {
+        followers.put(((EurekaServiceInstance) group.get(0)).getInstanceInfo(), group.subList(1, group.size()));
+        serviceTargets.removeAll(group.subList(1, group.size()));
+      });
+      instances.forEach(instance -> {
+        InstanceInfo instanceInfo = ((EurekaServiceInstance) instance).getInstanceInfo();
+        urls.put(instanceInfo, followers.containsKey(instanceInfo) ? sharedUrl : url);
+        props.put(instanceInfo, prop);
+        serviceIds.put(instanceInfo.getInstanceId(), id);
+      });
+      targets.addAll(serviceTargets);
+      responses.put(id, new TreeMap<>());
+    });
+    Consumer<InstanceResponse> listener =
+        response -> responses.get(serviceIds.get(response.getInstanceId())).put(response.getInstanceId(), response);
+    configService.executeOnInstances(urls::get, props::get, HttpMethod.PUT, targets, op, listener);
+
+    List<ServiceInstance> fallback = new ArrayList<>();
+    followers.forEach((representative, group) -> {
+      InstanceResponse response = responses.get(serviceIds.get(representative.getInstanceId()))
+          .get(representative.getInstanceId());
+      if (response == null || !response.isSuccessful()) {
+        fallback.addAll(group);
+      }
+    });
+    if (!fallback.isEmpty()) {
+      configService.executeOnInstances(urls::get, props::get, HttpMethod.PUT, fallback, op, listener);
+    }
+    log.info("op={}, status=OK, services={}, calls={}", op, responses.size(), targets.size() + fallback.size());
+
+    boolean allSuccessful = responses.values().stream()
+        .flatMap(serviceResponses -> serviceResponses.values().stream())
+        .allMatch(InstanceResponse::isSuccessful);
+    return new ResponseEntity<>(responses, allSuccessful ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS);
+  }
+
+  @PutMapping(path = "/{serviceId}", params = "rollout",
+      consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Rollout> rolloutConfig(HttpServletRequest request,
+      @RequestBody String prop,
+      @PathVariable("serviceId") String id,
+      @RequestParam("rollout") String waves,
+      @RequestParam(value = "zone", required = false) String zone,
+      @RequestParam(value = "bakeTime", required = false) Long bakeTime) {
+    log.info(LOG_OK_PATTERN, "rolloutConfig", getClientIp(request), id, prop);
+    Map<String, String> props = extractKeyAndValue(prop);
+    List<ServiceInstance> ultimateInstances = getUltimateInstances(id, null);
+    List<ServiceInstance> firstWave = StringUtils.isEmpty(zone)
+        ? Collections.emptyList() : getTargetInstances(id, null, zone, null);
+    String url = getUrl(linkTo(methodOn(this.getClass())
+        .updateConfig(request, prop, id, null, null, null, null, null, true)), id);
+    String valuesUrl = getUrl(linkTo(methodOn(this.getClass()).diffConfig(request, id, null, true)), id);
+    Rollout rollout = rolloutService.start(id, prop, props, url, valuesUrl, ultimateInstances, firstWave,
+        RolloutService.parsePercentages(waves), bakeTime);
+    return new ResponseEntity<>(rollout, HttpStatus.ACCEPTED);
+  }
+
+  @GetMapping(path = "/rollout/{rolloutId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Rollout> getRollout(@PathVariable("rolloutId") String rolloutId) {
+    return new ResponseEntity<>(rolloutService.getRollout(rolloutId), HttpStatus.OK);
+  }
+
+  @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamChanges(HttpServletRequest request,
+      @RequestParam("serviceId") String id,
+      @RequestParam(value = "since", required = false) Long since,
+      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+    long lastRevision = lastEventId != null ? lastEventId : since != null ? since : 0L;
+    log.info(LOG_OK_PATTERN, "streamChanges", getClientIp(request), id, "Subscribing from revision " + lastRevision);
+    return changeFeed.subscribe(id, lastRevision);
+  }
+
+  @GetMapping(path = {"/log/{serviceId}", "/log/{serviceId}/{ipAddress:.+}"},
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> getLogLevels(HttpServletRequest request,
+      @PathVariable("serviceId") String id,
+      @PathVariable(value = "ipAddress", required = false) String ip,
+      @RequestParam(value = "logger", required = false) List<String> loggers,
+      @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
+    if (isSlave) {
+      return new ResponseEntity<>(logLevelService.getLogLevels(loggers), HttpStatus.OK);
+    }
+    String op = "getLogLevels";
+    log.info(LOG_OK_PATTERN, op, getClientIp(request), id, "Getting log levels");
+    List<ServiceInstance> ultimateInstances = getUltimateInstances(id, ip);
+    String url = getUrl(linkTo(methodOn(this.getClass()).getLogLevels(request, id, ip, loggers, isSlave)), id);
+    return new ResponseEntity<>(
+        new TreeMap<>(configService.executeOnInstances(url, HttpMethod.GET, null, ultimateInstances, op)), HttpStatus.OK);
+  }
+
   @PutMapping(path = {"/log/{serviceId}", "/log/{serviceId}/{ipAddress:.+}"},
       consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity updateLog(HttpServletRequest request,
       @RequestBody String prop,
       @PathVariable("serviceId") String id,
       @PathVariable(value = "ipAddress", required = false) String ip,
+      @RequestParam(value = "ttl", required = false) Long ttl,
       @RequestHeader(value = "isSlaveInstance", required = false) boolean isSlave) {
     String op = "updateLog";
-    Map.Entry<String, String> entry = extractKeyAndValue(prop).entrySet().iterator().next();
+    Map<String, String> logLevels = extractKeyAndValue(prop);
 
     if (isSlave) {
-      configService.updateLog(entry.getKey(), entry.getValue());
+      logLevelService.updateLogs(logLevels, ttl);
     } else {
       log.info(LOG_OK_PATTERN, op, getClientIp(request), id, prop);
       List<ServiceInstance> ultimateInstances = getUltimateInstances(id, ip);
-      String url = getUrl(linkTo(methodOn(this.getClass()).updateLog(request, prop, id, ip, isSlave)), id);
-      configService.executeOnInstances(url, HttpMethod.PUT, prop, ultimateInstances, op);
+      String url = getUrl(linkTo(methodOn(this.getClass()).updateLog(request, prop, id, ip, ttl, isSlave)), id);
+      return getFanOutResponse(configService.executeOnInstances(url, HttpMethod.PUT, prop, ultimateInstances, op));
     }
 
     return new ResponseEntity(HttpStatus.CREATED);
   }
 
+  @GetMapping(path = "/pool/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Map<String, Object>> getConnectionPoolStats() {
+    return new ResponseEntity<>(configService.getConnectionPoolStats(), HttpStatus.OK);
+  }
+
+  private static String getAggregateETag(Map<String, InstanceResponse> responses) {
+    if (responses.isEmpty()
+        || responses.values().stream().anyMatch(response -> !response.isSuccessful() || response.getEtag() == null)) {
+      return null;
+    }
+    if (responses.size() == 1) {
+      //the instance's own ETag carries its boot id, which tells it whether a later since refers to its revisions
+      return responses.values().iterator().next().getEtag();
+    }
+    StringBuilder etags = new StringBuilder();
+    new TreeMap<>(responses).forEach((instanceId, response) ->
+        etags.append(instanceId).append('=').append(response.getEtag()).append(';'));
+    return "\"" + DigestUtils.md5DigestAsHex(etags.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+  }
+
+  private static boolean isNotModified(String ifNoneMatch, String etag) {
+    if (StringUtils.isEmpty(ifNoneMatch) || etag == null) {
+      return false;
+    }
+    for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+      String tag = StringUtils.removeStart(candidate.trim(), "W/");
+      if ("*".equals(tag) || etag.equals(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Map<String, InstanceResponse> updateOncePerSharedSnapshot(HttpServletRequest request, String prop,
+      String id, String url, List<ServiceInstance> instances, String op) {
+    Map<String, List<ServiceInstance>> sharedGroups = instanceCache.groupBySharedSnapshot(instances);
+    if (sharedGroups.isEmpty()) {
+      return configService.executeOnInstances(url, HttpMethod.PUT, prop, instances, op);
+    }
+    //one process per host and snapshot file applies the update and publishes it, the others read it from the file
+    List<ServiceInstance> representatives = new ArrayList<>();
+    List<ServiceInstance> others = new ArrayList<>(instances);
+    sharedGroups.values().forEach(group -> {
+      representatives.add(group.get(0));
+      others.removeAll(group);
+    });
+    Map<String, InstanceResponse> responses = new TreeMap<>();
+    if (!others.isEmpty()) {
+      responses.putAll(configService.executeOnInstances(url, HttpMethod.PUT, prop, others, op));
+    }
+    String sharedUrl = getUrl(linkTo(methodOn(this.getClass())
+        .updateConfig(request, prop, id, null, null, null, Boolean.TRUE, null, false)), id);
+    Map<String, InstanceResponse> sharedResponses =
+        configService.executeOnInstances(sharedUrl, HttpMethod.PUT, prop, representatives, op);
+    responses.putAll(sharedResponses);
+
+    List<ServiceInstance> fallback = new ArrayList<>();
+    sharedGroups.values().forEach(group -> {
+      InstanceResponse response = sharedResponses.get(((EurekaServiceInstance) group.get(0)).getInstanceInfo()
+          .getInstanceId());
+      if (response == null || !response.isSuccessful()) {
+        fallback.addAll(group.subList(1, group.size()));
+      }
+    });
+    if (!fallback.isEmpty()) {
+      responses.putAll(configService.executeOnInstances(url, HttpMethod.PUT, prop, fallback, op));
+    }
+    log.info("op={}, status=OK, serviceId={}, instances={}, calls={}", op, id, instances.size(),
+        others.size() + representatives.size() + fallback.size());
+    return responses;
+  }
+
+  /**
+   * Sends the update as a dry run to one instance of the service, its answer when it rejected the keys or values.
+   */
+  private Map<String, InstanceResponse> getRejections(HttpServletRequest request, String prop, String id,
+      List<ServiceInstance> instances) {
+    String url = getUrl(linkTo(methodOn(this.getClass())
+        .updateConfig(request, prop, id, null, null, null, null, Boolean.TRUE, false)), id);
+    Map<String, InstanceResponse> responses = configService.executeOnInstances(url, HttpMethod.PUT, prop,
+        Collections.singletonList(instances.get(0)), "validateConfig");
+    //an instance that could not be reached does not block the update, the fan-out reports it
+    boolean rejected = responses.values().stream()
+        .anyMatch(response -> response.getHttpStatus() == HttpStatus.BAD_REQUEST.value());
+    return rejected ? responses : Collections.emptyMap();
+  }
+
+  private static String toProp(Map<String, String> props) {
+    return props.entrySet().stream()
+        .map(entry -> entry.getKey() + ":" + entry.getValue())
+        .collect(Collectors.joining("\n"));
+  }
+
+  private ResponseEntity<Map<String, InstanceResponse>> getFanOutResponse(Map<String, InstanceResponse> responses) {
+    boolean allSuccessful = responses.values().stream().allMatch(InstanceResponse::isSuccessful);
+    return new ResponseEntity<>(responses, allSuccessful ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS);
+  }
+
   private Map<String, String> extractKeyAndValue(String prop) {
-    Map<String, String> keyValue = new HashMap<>();
-    if (!StringUtils.isEmpty(prop)) {
-      String propKey = StringUtils.substringBefore(prop, ":");
-      String propValue = StringUtils.substringAfter(prop, ":");
-      if (!StringUtils.isEmpty(propKey) && !StringUtils.isEmpty(propValue)) {
-        keyValue.put(propKey.trim(), propValue.trim());
-      } else {
-        throw new RuntimeException("Oops! Either key or value not available."); //NOPMD
+    Map<String, String> keyValue = new LinkedHashMap<>();
+    if (!StringUtils.isBlank(prop)) {
+      for (String line : StringUtils.split(prop, "\r\n")) {
+        if (StringUtils.isBlank(line)) {
+          continue;
+        }
+        String propKey = StringUtils.substringBefore(line, ":");
+        String propValue = StringUtils.substringAfter(line, ":");
+        if (!StringUtils.isEmpty(propKey) && !StringUtils.isEmpty(propValue)) {
+          keyValue.put(propKey.trim(), propValue.trim());
+        } else {
+          throw new RuntimeException("Oops! Either key or value not available."); //NOPMD
+        }
       }
     } else {
       throw new RuntimeException("Oops! Property to update is not available."); //NOPMD
@@ -134,23 +571,86 @@ public class DynamicConfigController {
     return keyValue;
   }
 
+  private Map<String, Map<String, String>> extractBatch(String batch) {
+    if (StringUtils.isBlank(batch)) {
+      throw new RuntimeException("Oops! Property to update is not available."); //NOPMD
+    }
+    Map<String, Map<String, Object>> values;
+    try {
+      values = objectMapper.readValue(batch,
+          new TypeReference<LinkedHashMap<String, LinkedHashMap<String, Object>>>() { });
+    } catch (IOException ex) {
+      throw new RuntimeException("Oops! Batch is not valid JSON."); //NOPMD
+    }
+    if (CollectionUtils.isEmpty(values)) {
+      throw new RuntimeException("Oops! Property to update is not available."); //NOPMD
+    }
+    Map<String, Map<String, String>> propsByService = new LinkedHashMap<>();
+    values.forEach((id, props) -> {
+      if (CollectionUtils.isEmpty(props)) {
+        throw new RuntimeException("Oops! Property to update is not available."); //NOPMD
+      }
+      Map<String, String> keyValue = new LinkedHashMap<>();
+      props.forEach((key, value) -> {
+        if (value instanceof Map || value instanceof Collection) {
+          throw new RuntimeException("Oops! Only scalar values can be updated, key: " + key); //NOPMD
+        }
+        //the keys are sent to the instances as key:value lines
+        String propValue = value == null ? null : String.valueOf(value).trim();
+        if (StringUtils.isBlank(key) || StringUtils.isEmpty(propValue)
+            || StringUtils.containsAny(key, ":\r\n") || StringUtils.containsAny(propValue, "\r\n")) {
+          throw new RuntimeException("Oops! Either key or value not available."); //NOPMD
+        }
+        keyValue.put(key.trim(), propValue);
+      });
+      propsByService.put(id, keyValue);
+    });
+    return propsByService;
+  }
+
+  private Map<String, List<FlagRule>> extractFlagRules(String rules) {
+    if (StringUtils.isBlank(rules)) {
+      throw new RuntimeException("Oops! Rules to update are not available."); //NOPMD
+    }
+    try {
+      return objectMapper.readValue(rules, new TypeReference<LinkedHashMap<String, List<FlagRule>>>() { });
+    } catch (IOException ex) {
+      throw new RuntimeException("Oops! Rules are not valid JSON."); //NOPMD
+    }
+  }
+
   private List<ServiceInstance> getUltimateInstances(String serviceId, String ipAddress) {
-    List<ServiceInstance> instances = discoveryClient.getInstances(serviceId);
+    List<ServiceInstance> instances = instanceCache.getInstances(serviceId);
     if (CollectionUtils.isEmpty(instances)) {
       throw new RuntimeException("Oops! Please enter correct service id."); //NOPMD
     }
+    if (ANY_IP_ADDRESS.equals(ipAddress)) {
+      return Collections.singletonList(instances.iterator().next());
+    }
     if (!StringUtils.isEmpty(ipAddress)) {
-      ServiceInstance serviceInstance = instances.stream()
-          .filter(instance -> ((EurekaServiceInstance) instance).getInstanceInfo().getIPAddr().equals(ipAddress))
-          .findFirst().orElseGet(() -> {
-            if (ANY_IP_ADDRESS.equals(ipAddress)) {
-              return instances.iterator().next();
-            } else {
-              throw new RuntimeException("Oops! IP not found for the service."); //NOPMD
-            }
-          });
+      ServiceInstance serviceInstance = instanceCache.getByIpAddress(serviceId, ipAddress);
+      if (serviceInstance == null) {
+        throw new RuntimeException("Oops! IP not found for the service."); //NOPMD
+      }
+      return Collections.singletonList(serviceInstance);
+    }
+    return instances;
+  }
+
+  private List<ServiceInstance> getTargetInstances(String serviceId, String instanceId, String zone,
+      List<String> labels) {
+    if (!StringUtils.isEmpty(instanceId)) {
+      ServiceInstance serviceInstance = instanceCache.getByInstanceId(serviceId, instanceId);
+      if (serviceInstance == null) {
+        throw new RuntimeException("Oops! Instance not found for the service."); //NOPMD
+      }
       return Collections.singletonList(serviceInstance);
     }
+    getUltimateInstances(serviceId, null);
+    List<ServiceInstance> instances = instanceCache.select(serviceId, zone, labels);
+    if (instances.isEmpty()) {
+      throw new RuntimeException("Oops! No instance matches the given zone or labels."); //NOPMD
+    }
     return instances;
   }
 
@@ -0,0 +1,8 @@
+package com.example.editor;
+
+@FunctionalInterface
+public interface ValueConverter {
+
+  Object convert(String text);
+
+}
@@ -0,0 +1,369 @@
+package com.example.editor;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Converters from the text of an update or header to the type of a field or getter, resolved once per type.
+ * Collections, maps and arrays are written comma separated ({@code a,b} and {@code k1=v1,k2=v2}), which is also
+ * what {@link #format(Object)} produces; a {@code ,}, {@code =} or {@code \} inside an element is escaped with {@code \}.
+ */
+public final class ValueConverters {
+
+  private static final Map<Type, ValueConverter> CONVERTERS = new ConcurrentHashMap<>();
+
+  static {
+    register(String.class, text -> text);
+    register(boolean.class, Boolean.class, ValueConverters::toBoolean);
+    register(char.class, Character.class, ValueConverters::toCharacter);
+    register(byte.class, Byte.class, Byte::decode);
+    register(short.class, Short.class, Short::decode);
+    register(int.class, Integer.class, Integer::decode);
+    register(long.class, Long.class, Long::decode);
+    register(float.class, Float.class, Float::valueOf);
+    register(double.class, Double.class, Double::valueOf);
+    register(BigDecimal.class, BigDecimal::new);
+    register(BigInteger.class, BigInteger::new);
+    //plain numbers are milliseconds, otherwise 10s, 5m or ISO-8601 like PT10S
+    register(Duration.class, text -> DurationStyle.detectAndParse(text.trim()));
+    register(UUID.class, text -> UUID.fromString(text.trim()));
+    register(Instant.class, text -> Instant.parse(text.trim()));
+    register(LocalDate.class, text -> LocalDate.parse(text.trim()));
+    register(LocalTime.class, text -> LocalTime.parse(text.trim()));
+    register(LocalDateTime.class, text -> LocalDateTime.parse(text.trim()));
+    register(OffsetDateTime.class, text -> OffsetDateTime.parse(text.trim()));
+    register(ZonedDateTime.class, text -> ZonedDateTime.parse(text.trim()));
+    register(Period.class, text -> Period.parse(text.trim()));
+    register(ZoneId.class, text -> ZoneId.of(text.trim()));
+    //DataSize comes with Spring 5.1, e.g. 10MB
+    registerParser("org.springframework.util.unit.DataSize");
+  }
+
+  private ValueConverters() {
+  }
+
+  public static ValueConverter forType(Type type) {
+    ValueConverter converter = CONVERTERS.get(type);
+    if (converter == null) {
+      //resolved outside of the map, element converters of collections are looked up recursively
+      ValueConverter created = createConverter(type);
+      converter = CONVERTERS.putIfAbsent(type, created);
+      if (converter == null) {
+        converter = created;
+      }
+    }
+    return converter;
+  }
+
+  public static boolean isSupported(Type type) {
+    return !(forType(type) instanceof UnsupportedConverter);
+  }
+
+  public static String format(Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (value.getClass().isArray()) {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < Array.getLength(value); i++) {
+        appendElement(text, Array.get(value, i));
+      }
+      return text.toString();
+    }
+    if (value instanceof Collection) {
+      StringBuilder text = new StringBuilder();
+      ((Collection<?>) value).forEach(element -> appendElement(text, element));
+      return text.toString();
+    }
+    if (value instanceof Map) {
+      StringBuilder text = new StringBuilder();
+      ((Map<?, ?>) value).forEach((key, element) -> {
+        appendElement(text, key);
+        text.append('=').append(escape(format(element)));
+      });
+      return text.toString();
+    }
+    if (value instanceof Enum) {
+      return ((Enum<?>) value).name();
+    }
+    return String.valueOf(value);
+  }
+
+  private static void appendElement(StringBuilder text, Object element) {
+    if (text.length() > 0) {
+      text.append(',');
+    }
+    text.append(escape(format(element)));
+  }
+
+  private static String escape(String text) {
+    if (text == null) {
+      return "";
+    }
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (isEscaped(c)) {
+        escaped.append('\\');
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  private static String unescape(String text) {
+    StringBuilder unescaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      //any other backslash is kept, e.g. in a Windows path
+      if (c == '\\' && i + 1 < text.length() && isEscaped(text.charAt(i + 1))) {
+        c = text.charAt(++i);
+      }
+      unescaped.append(c);
+    }
+    return unescaped.toString().trim();
+  }
+
+  private static boolean isEscaped(char c) {
+    return c == ',' || c == '=' || c == '\\';
+  }
+
+  private static void register(Class<?> type, ValueConverter converter) {
+    CONVERTERS.put(type, text -> text == null ? null : converter.convert(text));
+  }
+
+  private static void register(Class<?> primitiveType, Class<?> wrapperType, ValueConverter converter) {
+    register(wrapperType, converter);
+    CONVERTERS.put(primitiveType, converter);
+  }
+
+  private static ValueConverter createConverter(Type type) {
+    if (type instanceof ParameterizedType) {
+      ParameterizedType parameterizedType = (ParameterizedType) type;
+      Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+      Type[] typeArguments = parameterizedType.getActualTypeArguments();
+      if (Collection.class.isAssignableFrom(rawType)) {
+        return collectionConverter(type, rawType, typeArguments[0]);
+      }
+      if (Map.class.isAssignableFrom(rawType)) {
+        return mapConverter(type, rawType, typeArguments[0], typeArguments[1]);
+      }
+      return forType(rawType);
+    }
+    if (type instanceof WildcardType) {
+      return forType(((WildcardType) type).getUpperBounds()[0]);
+    }
+    if (!(type instanceof Class)) {
+      return new UnsupportedConverter(type);
+    }
+    Class<?> rawType = (Class<?>) type;
+    if (rawType.isEnum()) {
+      return enumConverter(rawType);
+    }
+    if (rawType.isArray()) {
+      return arrayConverter(rawType);
+    }
+    if (Collection.class.isAssignableFrom(rawType)) {
+      return collectionConverter(type, rawType, String.class);
+    }
+    if (Map.class.isAssignableFrom(rawType)) {
+      return mapConverter(type, rawType, String.class, String.class);
+    }
+    //only the value types registered above, anything else cannot be set from text
+    return new UnsupportedConverter(rawType);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static ValueConverter enumConverter(Class<?> type) {
+    return text -> text == null ? null : Enum.valueOf((Class<? extends Enum>) type, text.trim());
+  }
+
+  private static ValueConverter arrayConverter(Class<?> type) {
+    Class<?> componentType = type.getComponentType();
+    ValueConverter elementConverter = forType(componentType);
+    if (elementConverter instanceof UnsupportedConverter) {
+      return new UnsupportedConverter(type);
+    }
+    return text -> {
+      if (text == null) {
+        return null;
+      }
+      List<String> elements = split(text, ',');
+      Object array = Array.newInstance(componentType, elements.size());
+      for (int i = 0; i < elements.size(); i++) {
+        Array.set(array, i, elementConverter.convert(unescape(elements.get(i))));
+      }
+      return array;
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ValueConverter collectionConverter(Type type, Class<?> rawType, Type elementType) {
+    ValueConverter elementConverter = forType(elementType);
+    Supplier<Collection<Object>> factory;
+    if (rawType.isAssignableFrom(ArrayList.class)) {
+      factory = ArrayList::new;
+    } else if (rawType.isAssignableFrom(LinkedHashSet.class)) {
+      factory = LinkedHashSet::new;
+    } else if (rawType.isAssignableFrom(TreeSet.class) && SortedSet.class.isAssignableFrom(rawType)) {
+      factory = TreeSet::new;
+    } else {
+      return new UnsupportedConverter(type);
+    }
+    if (elementConverter instanceof UnsupportedConverter) {
+      return new UnsupportedConverter(type);
+    }
+    return text -> {
+      if (text == null) {
+        return null;
+      }
+      Collection<Object> collection = factory.get();
+      for (String element : split(text, ',')) {
+        collection.add(elementConverter.convert(unescape(element)));
+      }
+      return collection;
+    };
+  }
+
+  private static ValueConverter mapConverter(Type type, Class<?> rawType, Type keyType, Type valueType) {
+    ValueConverter keyConverter = forType(keyType);
+    ValueConverter valueConverter = forType(valueType);
+    Supplier<Map<Object, Object>> factory;
+    if (rawType.isAssignableFrom(LinkedHashMap.class)) {
+      factory = LinkedHashMap::new;
+    } else if (rawType.isAssignableFrom(TreeMap.class) && SortedMap.class.isAssignableFrom(rawType)) {
+      factory = TreeMap::new;
+    } else {
+      return new UnsupportedConverter(type);
+    }
+    if (keyConverter instanceof UnsupportedConverter || valueConverter instanceof UnsupportedConverter) {
+      return new UnsupportedConverter(type);
+    }
+    return text -> {
+      if (text == null) {
+        return null;
+      }
+      Map<Object, Object> map = factory.get();
+      for (String entry : split(text, ',')) {
+        List<String> keyAndValue = split(entry, '=');
+        if (keyAndValue.size() < 2 || keyAndValue.get(0).isEmpty()) {
+          throw new IllegalArgumentException("Invalid map entry, expected key=value: " + entry);
+        }
+        //an unescaped = in the value belongs to the value
+        map.put(keyConverter.convert(unescape(keyAndValue.get(0))),
+            valueConverter.convert(unescape(entry.substring(keyAndValue.get(0).length() + 1))));
+      }
+      return map;
+    };
+  }
+
+  private static void registerParser(String className) {
+    if (!ClassUtils.isPresent(className, ValueConverters.class.getClassLoader())) {
+      return;
+    }
+    try {
+      Class<?> type = ClassUtils.forName(className, ValueConverters.class.getClassLoader());
+      MethodHandle parser = MethodHandles.publicLookup()
+          .unreflect(type.getMethod("parse", CharSequence.class))
+          .asType(MethodType.methodType(Object.class, String.class));
+      register(type, text -> {
+        try {
+          return (Object) parser.invokeExact(text.trim());
+        } catch (RuntimeException | Error ex) {
+          throw ex;
+        } catch (Throwable ex) {
+          throw new IllegalArgumentException(ex);
+        }
+      });
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException ex) {
+      //left unsupported
+    }
+  }
+
+  /**
+   * Splits on the separators that are not escaped, leaving the escapes in the parts.
+   */
+  private static List<String> split(String text, char separator) {
+    List<String> parts = new ArrayList<>();
+    String trimmed = text.trim();
+    if (trimmed.isEmpty()) {
+      return parts;
+    }
+    int start = 0;
+    for (int i = 0; i < trimmed.length(); i++) {
+      char c = trimmed.charAt(i);
+      if (c == '\\' && i + 1 < trimmed.length() && isEscaped(trimmed.charAt(i + 1))) {
+        i++;
+      } else if (c == separator) {
+        parts.add(trimmed.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    parts.add(trimmed.substring(start).trim());
+    return parts;
+  }
+
+  private static Boolean toBoolean(String text) {
+    if ("true".equalsIgnoreCase(text)) {
+      return Boolean.TRUE;
+    }
+    if ("false".equalsIgnoreCase(text)) {
+      return Boolean.FALSE;
+    }
+    throw new IllegalArgumentException("Invalid boolean value: " + text);
+  }
+
+  private static Character toCharacter(String text) {
+    if (text.length() != 1) {
+      throw new IllegalArgumentException("Invalid character value: " + text);
+    }
+    return text.charAt(0);
+  }
+
+  private static final class UnsupportedConverter implements ValueConverter {
+
+    private final Type type;
+
+    private UnsupportedConverter(Type type) {
+      this.type = type;
+    }
+
+    @Override
+    public Object convert(String text) {
+      throw new IllegalArgumentException("No converter available for type " + type.getTypeName());
+    }
+  }
+
+}
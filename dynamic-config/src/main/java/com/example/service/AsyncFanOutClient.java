@@ -0,0 +1,166 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Non-blocking fan-out backend on the Apache async HTTP client, enabled with {@code fanOutBackend: async}. Calls are
+ * multiplexed on {@code fanOutIoThreads} I/O threads instead of holding a fan-out thread each, so the number of calls
+ * in flight is only bounded by {@code fanOutMaxInFlight} and the connection pool.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamic-config.fanOutBackend", havingValue = "async")
+public class AsyncFanOutClient {
+
+  private static final TypeReference<Map<String, Object>> BODY_TYPE = new TypeReference<Map<String, Object>>() { };
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private CloseableHttpAsyncClient httpClient;
+
+  @PostConstruct
+  public void init() throws IOReactorException {
+    PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+        new DefaultConnectingIOReactor(IOReactorConfig.custom()
+            .setIoThreadCount(Math.max(1, configProps.getFanOutIoThreads()))
+            .setConnectTimeout(configProps.getConnectionTimeout())
+            .setSoTimeout(configProps.getReadTimeout())
+            .build()));
+    connectionManager.setMaxTotal(configProps.getMaxTotalConnections());
+    connectionManager.setDefaultMaxPerRoute(configProps.getMaxConnectionsPerRoute());
+    long keepAlive = configProps.getKeepAlive();
+    httpClient = HttpAsyncClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(configProps.getConnectionTimeout())
+            .setSocketTimeout(configProps.getReadTimeout())
+            .setConnectionRequestTimeout(configProps.getConnectionTimeout())
+            .build())
+        .setKeepAliveStrategy((response, context) -> keepAlive)
+        .build();
+    httpClient.start();
+  }
+
+  @PreDestroy
+  public void destroy() {
+    try {
+      if (httpClient != null) {
+        httpClient.close();
+      }
+    } catch (IOException ex) {
+      log.warn("op=asyncFanOutClose, status=KO, error={}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Sends the call and hands the response to the callback on an I/O thread; a cancelled call reports nothing.
+   */
+  public Future<HttpResponse> execute(InstanceInfo instanceInfo, String httpUrl, HttpMethod method,
+      HttpHeaders headers, String body, String op, Consumer<InstanceResponse> callback) {
+    RequestBuilder builder = RequestBuilder.create(method.name()).setUri(httpUrl);
+    if (headers != null) {
+      headers.forEach((name, values) -> values.forEach(value -> builder.addHeader(name, value)));
+    }
+    builder.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+        .setHeader("isSlaveInstance", "true");
+    if (body != null) {
+      builder.setEntity(new StringEntity(body, ContentType.create(MediaType.TEXT_PLAIN_VALUE, "UTF-8")));
+    }
+    HttpUriRequest request = builder.build();
+    long start = System.nanoTime();
+    return httpClient.execute(request, new FutureCallback<HttpResponse>() {
+      @Override
+      public void completed(HttpResponse response) {
+        callback.accept(toInstanceResponse(instanceInfo, httpUrl, op, response, start));
+      }
+
+      @Override
+      public void failed(Exception ex) {
+        InstanceResponse instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.FAILED,
+            elapsed(start));
+        instanceResponse.setError(ExceptionUtils.getMessage(ex));
+        log.error("op={}, status=KO, appName={}, url={}, Error={}", op, instanceInfo.getAppName(), httpUrl, ex);
+        callback.accept(instanceResponse);
+      }
+
+      @Override
+      public void cancelled() {
+        //cancelled on the deadline, the caller reports the timeout
+      }
+    });
+  }
+
+  private InstanceResponse toInstanceResponse(InstanceInfo instanceInfo, String httpUrl, String op,
+      HttpResponse response, long start) {
+    int httpStatus = response.getStatusLine().getStatusCode();
+    InstanceResponse instanceResponse;
+    try {
+      String text = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity(), "UTF-8");
+      if (httpStatus >= 400) {
+        //the same outcome the blocking backend gets from the RestTemplate error handler
+        instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.FAILED, elapsed(start));
+        instanceResponse.setError(httpStatus + " " + response.getStatusLine().getReasonPhrase());
+        log.error("op={}, status=KO, appName={}, url={}, Error={}", op, instanceInfo.getAppName(), httpUrl,
+            instanceResponse.getError());
+      } else {
+        instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.OK, elapsed(start));
+        instanceResponse.setBody(StringUtils.isBlank(text) ? null : objectMapper.readValue(text, BODY_TYPE));
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        instanceResponse.setEtag(etag == null ? null : etag.getValue());
+        log.info("op={}, status=OK, appName={}, url={}, latency={}", op, instanceInfo.getAppName(), httpUrl,
+            instanceResponse.getLatency());
+      }
+    } catch (IOException | RuntimeException ex) {
+      instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.FAILED, elapsed(start));
+      instanceResponse.setError(ExceptionUtils.getMessage(ex));
+      log.error("op={}, status=KO, appName={}, url={}, Error={}", op, instanceInfo.getAppName(), httpUrl, ex);
+    }
+    instanceResponse.setHttpStatus(httpStatus);
+    return instanceResponse;
+  }
+
+  private static long elapsed(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+}
@@ -0,0 +1,132 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.InstanceRegisteredEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings a starting instance up to date before it registers with Eureka: overrides from the local journal first,
+ * then the current override set of the orchestrator or of a running peer, fetched in one request.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class ConfigCatchUp implements SmartInitializingSingleton {
+
+  private static final int MAX_PEER_ATTEMPTS = 3;
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DynamicConfigService configService;
+
+  @Autowired
+  private DiscoveryClient discoveryClient;
+
+  @Autowired(required = false)
+  private OverrideJournal journal;
+
+  @Autowired
+  @Qualifier("dynamicConfigRestTemplate")
+  private RestTemplate restTemplate;
+
+  @Value("${spring.application.name:}")
+  private String serviceId;
+
+  @Value("${server.servlet.context-path:}")
+  private String contextPath;
+
+  private String lastSource;
+  private long lastRevision = -1;
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    if (journal != null) {
+      journal.replay();
+    }
+    catchUp();
+  }
+
+  @EventListener(InstanceRegisteredEvent.class)
+  public void onInstanceRegistered() {
+    //overrides pushed between the first catch-up and the registration would otherwise never reach this instance
+    catchUp();
+  }
+
+  synchronized void catchUp() {
+    if (StringUtils.isEmpty(serviceId)
+        || StringUtils.isEmpty(configProps.getCatchUpUrl()) && !configProps.isCatchUpFromPeers()) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      String source = StringUtils.isEmpty(configProps.getCatchUpUrl()) ? null : configProps.getCatchUpUrl();
+      ConfigChange latest = source != null ? fetch(source, false) : null;
+      if (latest == null && configProps.isCatchUpFromPeers()) {
+        for (ServiceInstance peer : getPeers()) {
+          source = peer.getUri() + contextPath + "/v1/config/{serviceId}/overrides";
+          latest = fetch(source, true);
+          if (latest != null) {
+            break;
+          }
+        }
+      }
+      if (latest == null || latest.getProps() == null) {
+        log.warn("op=catchUp, status=KO, serviceId={}, desc=No override source reachable", serviceId);
+        return;
+      }
+      if (source.equals(lastSource) && latest.getRevision() == lastRevision) {
+        return;
+      }
+      configService.applyOverrides(latest.getProps(), "catchUp");
+      lastSource = source;
+      lastRevision = latest.getRevision();
+      log.info("op=catchUp, status=OK, serviceId={}, source={}, revision={}, overrides={}, latency={}", serviceId,
+          source, latest.getRevision(), latest.getProps().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (Exception ex) {
+      log.error("op=catchUp, status=KO, serviceId={}, error={}", serviceId, ex.getMessage());
+    }
+  }
+
+  private List<ServiceInstance> getPeers() {
+    List<ServiceInstance> peers = new ArrayList<>(discoveryClient.getInstances(serviceId));
+    Collections.shuffle(peers);
+    return peers.subList(0, Math.min(MAX_PEER_ATTEMPTS, peers.size()));
+  }
+
+  private ConfigChange fetch(String url, boolean fromPeer) {
+    try {
+      HttpHeaders headers = new HttpHeaders();
+      if (fromPeer) {
+        headers.set("isSlaveInstance", "true");
+      }
+      return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), ConfigChange.class, serviceId)
+          .getBody();
+    } catch (Exception ex) {
+      log.warn("op=catchUp, status=KO, url={}, error={}", url, ex.getMessage());
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,19 @@
+package com.example.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigChange {
+
+  private long revision;
+  private String serviceId;
+  private Map<String, String> props;
+  private long timestamp;
+
+}
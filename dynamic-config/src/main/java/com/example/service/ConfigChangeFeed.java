@@ -0,0 +1,196 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class ConfigChangeFeed {
+
+  public static final String CHANGE_EVENT = "config";
+  public static final String SNAPSHOT_EVENT = "snapshot";
+
+  @Autowired
+  private ConfigProps configProps;
+
+  private final Deque<ConfigChange> history = new ArrayDeque<>();
+  private final Map<String, Map<String, String>> latestProps = new HashMap<>();
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  //a stalled subscriber only holds up its own sender thread, never publish
+  private final ExecutorService sendExecutor =
+      Executors.newCachedThreadPool(new CustomizableThreadFactory("dynamic-config-stream-send-"));
+
+  private long revision;
+  private ScheduledExecutorService heartbeatScheduler;
+
+  @PostConstruct
+  public void init() {
+    heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-config-stream-"));
+    heartbeatScheduler.scheduleWithFixedDelay(this::sendHeartbeats, configProps.getStreamHeartbeatInterval(),
+        configProps.getStreamHeartbeatInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (heartbeatScheduler != null) {
+      heartbeatScheduler.shutdownNow();
+    }
+    sendExecutor.shutdownNow();
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+  }
+
+  public synchronized ConfigChange publish(String serviceId, Map<String, String> props) {
+    ConfigChange change = new ConfigChange(++revision, serviceId, new LinkedHashMap<>(props), System.currentTimeMillis());
+    history.addLast(change);
+    while (history.size() > Math.max(1, configProps.getStreamHistorySize())) {
+      history.removeFirst();
+    }
+    latestProps.computeIfAbsent(serviceId, key -> new LinkedHashMap<>()).putAll(props);
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.serviceId.equals(serviceId)) {
+        send(subscriber, CHANGE_EVENT, change);
+      }
+    }
+    return change;
+  }
+
+  public synchronized SseEmitter subscribe(String serviceId, long lastRevision) {
+    Subscriber subscriber = new Subscriber(serviceId, new SseEmitter(configProps.getStreamTimeout()));
+    subscriber.emitter.onCompletion(() -> close(subscriber));
+    subscriber.emitter.onTimeout(() -> close(subscriber));
+    List<ConfigChange> changes = getChangesSince(serviceId, lastRevision);
+    if (changes == null) {
+      send(subscriber, SNAPSHOT_EVENT, getLatest(serviceId));
+    } else {
+      changes.forEach(change -> send(subscriber, CHANGE_EVENT, change));
+    }
+    subscribers.add(subscriber);
+    log.info("op=subscribe, status=OK, serviceId={}, lastRevision={}, subscribers={}",
+        serviceId, lastRevision, subscribers.size());
+    return subscriber.emitter;
+  }
+
+  public synchronized List<ConfigChange> getChangesSince(String serviceId, long lastRevision) {
+    if (lastRevision > revision) {
+      //the subscriber has seen revisions of an earlier orchestrator run
+      return null;
+    }
+    ConfigChange oldest = history.peekFirst();
+    if (oldest != null && lastRevision < oldest.getRevision() - 1 && latestProps.containsKey(serviceId)) {
+      //older changes were evicted from the history, the subscriber has to start from the full state
+      return null;
+    }
+    List<ConfigChange> changes = new ArrayList<>();
+    for (ConfigChange change : history) {
+      if (change.getRevision() > lastRevision && change.getServiceId().equals(serviceId)) {
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  public synchronized ConfigChange getLatest(String serviceId) {
+    Map<String, String> props = latestProps.getOrDefault(serviceId, Collections.emptyMap());
+    return new ConfigChange(revision, serviceId, new LinkedHashMap<>(props), System.currentTimeMillis());
+  }
+
+  private void sendHeartbeats() {
+    subscribers.forEach(subscriber -> enqueue(subscriber, SseEmitter.event().comment("heartbeat")));
+  }
+
+  private void send(Subscriber subscriber, String eventName, ConfigChange change) {
+    enqueue(subscriber, SseEmitter.event()
+        .id(String.valueOf(change.getRevision()))
+        .name(eventName)
+        .data(change, MediaType.APPLICATION_JSON));
+  }
+
+  private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+    if (subscriber.closed) {
+      return;
+    }
+    subscriber.events.add(event);
+    int pending = subscriber.pending.incrementAndGet();
+    if (pending > Math.max(1, configProps.getStreamHistorySize())) {
+      //that far behind it needs the full state anyway, it gets it when it reconnects with its last revision
+      drop(subscriber, new IOException("Subscriber too slow, " + pending + " events pending"));
+    } else if (pending == 1) {
+      sendExecutor.execute(() -> drain(subscriber));
+    }
+  }
+
+  private void drain(Subscriber subscriber) {
+    do {
+      SseEmitter.SseEventBuilder event = subscriber.events.poll();
+      if (subscriber.closed) {
+        continue;
+      }
+      try {
+        subscriber.emitter.send(event);
+      } catch (IOException | IllegalStateException ex) {
+        drop(subscriber, ex);
+      }
+    } while (subscriber.pending.decrementAndGet() > 0);
+  }
+
+  private void close(Subscriber subscriber) {
+    subscriber.closed = true;
+    subscribers.remove(subscriber);
+  }
+
+  private void drop(Subscriber subscriber, Exception ex) {
+    if (subscriber.closed) {
+      return;
+    }
+    subscriber.closed = true;
+    subscribers.remove(subscriber);
+    log.warn("op=streamChange, status=KO, serviceId={}, error={}", subscriber.serviceId, ex.getMessage());
+    //completing waits for a send in progress, so it is left to the sender thread
+    sendExecutor.execute(() -> subscriber.emitter.completeWithError(ex));
+  }
+
+  private static final class Subscriber {
+
+    private final String serviceId;
+    private final SseEmitter emitter;
+    private final Queue<SseEmitter.SseEventBuilder> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed;
+
+    private Subscriber(String serviceId, SseEmitter emitter) {
+      this.serviceId = Objects.requireNonNull(serviceId);
+      this.emitter = emitter;
+    }
+  }
+
+}
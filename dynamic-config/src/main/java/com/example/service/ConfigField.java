@@ -0,0 +1,64 @@
+package com.example.service;
+
+import com.example.editor.ValueConverter;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+@Getter
+class ConfigField {
+
+  private final String key;
+  private final Field field;
+  private final Object target;
+  private final ValueConverter converter;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+
+  ConfigField(String key, Field field, Object target, ValueConverter converter) throws IllegalAccessException {
+    this.key = key;
+    this.field = field;
+    this.target = target;
+    this.converter = converter;
+    //accessibility is granted once while the handles are resolved, never toggled per access
+    field.setAccessible(true);
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodHandle fieldGetter = lookup.unreflectGetter(field);
+    MethodHandle fieldSetter = lookup.unreflectSetter(field);
+    if (!Modifier.isStatic(field.getModifiers())) {
+      fieldGetter = fieldGetter.bindTo(target);
+      fieldSetter = fieldSetter.bindTo(target);
+    }
+    this.getter = fieldGetter.asType(MethodType.methodType(Object.class));
+    this.setter = fieldSetter.asType(MethodType.methodType(void.class, Object.class));
+  }
+
+  Object convert(String text) {
+    return converter.convert(text);
+  }
+
+  Object getValue() {
+    try {
+      return (Object) getter.invokeExact();
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  void setValue(Object value) {
+    try {
+      setter.invokeExact(value);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+}
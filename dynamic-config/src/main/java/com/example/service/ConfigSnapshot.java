@@ -0,0 +1,52 @@
+package com.example.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class ConfigSnapshot {
+
+  public static final ConfigSnapshot EMPTY = new ConfigSnapshot(0, Collections.emptyMap(), Collections.emptyMap());
+
+  private final long revision;
+  private final Map<String, Object> values;
+  private final Map<String, Long> keyRevisions;
+
+  private ConfigSnapshot(long revision, Map<String, Object> values, Map<String, Long> keyRevisions) {
+    this.revision = revision;
+    this.values = values;
+    this.keyRevisions = keyRevisions;
+  }
+
+  public long getRevision() {
+    return revision;
+  }
+
+  public boolean isEmpty() {
+    return values.isEmpty();
+  }
+
+  public Object get(String key) {
+    return values.get(key);
+  }
+
+  public Map<String, Object> getValues() {
+    return values;
+  }
+
+  public Map<String, Long> getKeyRevisions() {
+    return keyRevisions;
+  }
+
+  ConfigSnapshot with(Map<String, Object> fieldChanges, Collection<String> changedKeys) {
+    long newRevision = revision + 1;
+    Map<String, Object> newValues = new HashMap<>(values);
+    newValues.putAll(fieldChanges);
+    Map<String, Long> newKeyRevisions = new HashMap<>(keyRevisions);
+    changedKeys.forEach(key -> newKeyRevisions.put(key, newRevision));
+    return new ConfigSnapshot(newRevision, Collections.unmodifiableMap(newValues),
+        Collections.unmodifiableMap(newKeyRevisions));
+  }
+
+}
@@ -0,0 +1,18 @@
+package com.example.service;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class ConfigSnapshotHolder {
+
+  private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+
+  public ConfigSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  void publish(ConfigSnapshot newSnapshot) {
+    snapshot = newSnapshot;
+  }
+
+}
@@ -0,0 +1,150 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamic-config.streamUrl")
+public class ConfigStreamSubscriber {
+
+  private static final long MIN_RECONNECT_DELAY = 1000L;
+  private static final long MAX_RECONNECT_DELAY = 30000L;
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DynamicConfigService configService;
+
+  @Value("${spring.application.name}")
+  private String serviceId;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private volatile boolean running;
+  private volatile HttpURLConnection connection;
+  private volatile long lastRevision;
+  private Thread subscriberThread;
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    subscriberThread = new Thread(this::run, "dynamic-config-stream-subscriber");
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    HttpURLConnection current = connection;
+    if (current != null) {
+      current.disconnect();
+    }
+    if (subscriberThread != null) {
+      subscriberThread.interrupt();
+    }
+  }
+
+  public long getLastRevision() {
+    return lastRevision;
+  }
+
+  private void run() {
+    long reconnectDelay = MIN_RECONNECT_DELAY;
+    while (running) {
+      try {
+        consume();
+        reconnectDelay = MIN_RECONNECT_DELAY;
+      } catch (Exception ex) {
+        if (running) {
+          log.warn("op=streamSubscribe, status=KO, url={}, lastRevision={}, error={}",
+              configProps.getStreamUrl(), lastRevision, ex.getMessage());
+        }
+      }
+      try {
+        Thread.sleep(reconnectDelay);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+    }
+  }
+
+  private void consume() throws IOException {
+    URL url = new URL(configProps.getStreamUrl() + "?serviceId=" + URLEncoder.encode(serviceId, "UTF-8"));
+    HttpURLConnection streamConnection = (HttpURLConnection) url.openConnection();
+    streamConnection.setConnectTimeout(configProps.getConnectionTimeout());
+    //heartbeats arrive well within this window, a silent stream is treated as broken
+    streamConnection.setReadTimeout((int) Math.min(Integer.MAX_VALUE, configProps.getStreamHeartbeatInterval() * 3));
+    streamConnection.setRequestProperty("Accept", "text/event-stream");
+    streamConnection.setRequestProperty("isSlaveInstance", "true");
+    if (lastRevision > 0) {
+      streamConnection.setRequestProperty("Last-Event-ID", String.valueOf(lastRevision));
+    }
+    connection = streamConnection;
+    log.info("op=streamSubscribe, status=OK, url={}, lastRevision={}", url, lastRevision);
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(streamConnection.getInputStream(), StandardCharsets.UTF_8))) {
+      StringBuilder data = new StringBuilder();
+      String line;
+      while (running && (line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          dispatch(data.toString());
+          data.setLength(0);
+        } else if (line.startsWith("data:")) {
+          if (data.length() > 0) {
+            data.append('\n');
+          }
+          data.append(StringUtils.removeStart(line.substring(5), " "));
+        }
+      }
+    } finally {
+      streamConnection.disconnect();
+      connection = null;
+    }
+  }
+
+  void dispatch(String data) throws IOException {
+    if (data.isEmpty()) {
+      return;
+    }
+    ConfigChange change = objectMapper.readValue(data, ConfigChange.class);
+    if (change.getProps() != null && !change.getProps().isEmpty()) {
+      Map<String, String> applied = configService.applyOverrides(change.getProps(), "streamApply");
+      //keys this version does not know are skipped, a known key that failed fails the connection and the change
+      //is received again after reconnecting from the last applied revision
+      Set<String> failed = configService.getKnownKeys(change.getProps().keySet());
+      failed.removeAll(applied.keySet());
+      if (!failed.isEmpty()) {
+        throw new RuntimeException("Oops! Failed to apply streamed keys: " + failed); //NOPMD
+      }
+      log.info("op=streamApply, status=OK, revision={}, props={}, skipped={}", change.getRevision(), applied,
+          change.getProps().size() - applied.size());
+    }
+    lastRevision = change.getRevision();
+  }
+
+}
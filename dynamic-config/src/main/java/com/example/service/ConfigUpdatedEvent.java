@@ -0,0 +1,22 @@
+package com.example.service;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Map;
+
+@Getter
+public class ConfigUpdatedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, String> props;
+  private final long revision;
+
+  public ConfigUpdatedEvent(Object source, Map<String, String> props, long revision) {
+    super(source);
+    this.props = props;
+    this.revision = revision;
+  }
+
+}
@@ -0,0 +1,143 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Micrometer meters of the library. Getter calls go through the aspect far more often than anything else, so they
+ * are only measured for a sample of {@code metricsSampleRate} and counted with the inverse weight.
+ */
+@Component
+public class DynamicConfigMetrics {
+
+  public static final String SOURCE_HEADER = "header";
+  public static final String SOURCE_RULE = "rule";
+  public static final String SOURCE_SNAPSHOT = "snapshot";
+  public static final String SOURCE_DEFAULT = "default";
+
+  private static final String[] SOURCES = {SOURCE_HEADER, SOURCE_RULE, SOURCE_SNAPSHOT, SOURCE_DEFAULT};
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private ConfigProps configProps;
+
+  private final ConcurrentMap<String, GetterMeters> getterMeters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final DoubleAdder getterCalls = new DoubleAdder();
+  private final DoubleAdder headerHits = new DoubleAdder();
+  private volatile Supplier<Number> registrySize = () -> 0;
+
+  @PostConstruct
+  public void init() {
+    Gauge.builder("dynamic.config.getter.override.ratio", this, DynamicConfigMetrics::getOverrideRatio)
+        .description("Share of sampled getter calls answered from a request header")
+        .register(meterRegistry);
+    Gauge.builder("dynamic.config.registry.size", this, metrics -> metrics.registrySize.get().doubleValue())
+        .description("Number of fields that can be updated at runtime")
+        .register(meterRegistry);
+  }
+
+  public boolean sample() {
+    double rate = configProps.getMetricsSampleRate();
+    return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+  }
+
+  public void recordGetter(String configKey, String source, long overheadNanos) {
+    double rate = configProps.getMetricsSampleRate();
+    double weight = rate >= 1 || rate <= 0 ? 1 : 1 / rate;
+    GetterMeters meters = getterMeters.get(configKey);
+    if (meters == null) {
+      meters = getterMeters.computeIfAbsent(configKey, GetterMeters::new);
+    }
+    meters.record(source, overheadNanos, weight);
+    getterCalls.add(weight);
+    if (SOURCE_HEADER.equals(source)) {
+      headerHits.add(weight);
+    }
+  }
+
+  public void recordUpdate(String op, boolean successful, long nanos) {
+    String outcome = successful ? "success" : "failure";
+    getTimer("update|" + op + "|" + outcome, () -> Timer.builder("dynamic.config.update")
+        .description("Latency of config and log level updates applied on this instance")
+        .tag("op", op)
+        .tag("outcome", outcome)
+        .register(meterRegistry))
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Instance ids change with every deploy, so they are not a tag; the latency per instance is in the response.
+   */
+  public void recordInstanceCall(String op, InstanceResponse response) {
+    String status = response.getStatus().name().toLowerCase(Locale.ENGLISH);
+    getTimer("fanout|" + op + "|" + status, () -> Timer.builder("dynamic.config.fanout.instance")
+        .description("Latency of calls to a single instance during a fan-out")
+        .tag("op", op)
+        .tag("status", status)
+        .publishPercentileHistogram()
+        .register(meterRegistry))
+        .record(response.getLatency(), TimeUnit.MILLISECONDS);
+  }
+
+  private Timer getTimer(String key, Supplier<Timer> builder) {
+    Timer timer = timers.get(key);
+    return timer != null ? timer : timers.computeIfAbsent(key, ignored -> builder.get());
+  }
+
+  public void setRegistrySize(Supplier<Number> registrySize) {
+    this.registrySize = registrySize;
+  }
+
+  double getOverrideRatio() {
+    double calls = getterCalls.sum();
+    return calls == 0 ? 0 : headerHits.sum() / calls;
+  }
+
+  private final class GetterMeters {
+
+    private final Counter[] calls = new Counter[SOURCES.length];
+    private final Timer overhead;
+
+    private GetterMeters(String configKey) {
+      for (int i = 0; i < SOURCES.length; i++) {
+        calls[i] = Counter.builder("dynamic.config.getter.calls")
+            .description("Estimated getter calls through the aspect by where the value came from")
+            .tag("property", configKey)
+            .tag("source", SOURCES[i])
+            .register(meterRegistry);
+      }
+      overhead = Timer.builder("dynamic.config.getter.overhead")
+          .description("Time spent in the aspect for sampled getter calls, excluding the getter itself")
+          .tag("property", configKey)
+          .register(meterRegistry);
+    }
+
+    private void record(String source, long overheadNanos, double weight) {
+      for (int i = 0; i < SOURCES.length; i++) {
+        if (SOURCES[i].equals(source)) {
+          calls[i].increment(weight);
+        }
+      }
+      overhead.record(overheadNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+}
@@ -1,30 +1,26 @@
 package com.example.service;
 
-import ch.qos.logback.classic.Level;
-import ch.qos.logback.classic.Logger;
-import ch.qos.logback.classic.LoggerContext;
 import com.example.config.ConfigProps;
-import com.example.editor.BigDecimalEditor;
+import com.example.editor.ValueConverters;
 import com.netflix.appinfo.InstanceInfo;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.slf4j.LoggerFactory;
+import org.apache.http.pool.PoolStats;
 import org.springframework.aop.framework.Advised;
 import org.springframework.aop.support.AopUtils;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.boot.logging.LogLevel;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.MapPropertySource;
@@ -34,26 +30,50 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.PropertyPlaceholderHelper;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.beans.PropertyEditor;
-import java.beans.PropertyEditorManager;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 @Slf4j
 @Service
 @ConditionalOnProperty(
@@ -62,6 +82,12 @@ public class DynamicConfigService {
 
   private static final String CGLIB_CLASS_SEPARATOR = "$$";
   private static final String CGLIB_RENAMED_FIELD_PREFIX = "CGLIB$";
+  private static final String YML_PROPERTIES_KEY = "ZZZ - APPLICATION YML PROPERTIES - ZZZ";
+  private static final String DEFAULT_HEALTH_PATH = "actuator/health";
+  private static final String DIGEST_ROOT_KEY = "root";
+  private static final String DIGEST_KEYS_KEY = "keys";
+  private static final PropertyPlaceholderHelper PLACEHOLDER_HELPER =
+      new PropertyPlaceholderHelper("${", "}", ":", true);
 
   @Autowired
   private ConfigProps configProps;
@@ -72,64 +98,524 @@ public class DynamicConfigService {
   @Autowired
   private ConfigurableEnvironment configurableEnvironment;
 
-  static {
-    //Registering custom type to convert from String to target type
-    PropertyEditorManager.registerEditor(BigDecimal.class, BigDecimalEditor.class);
+  @Autowired
+  private ConfigSnapshotHolder snapshotHolder;
+
+  @Autowired
+  private FlagRuleHolder flagRuleHolder;
+
+  @Autowired
+  private PropertyOverlay propertyOverlay;
+
+  @Autowired
+  private DynamicConfigMetrics metrics;
+
+  @Autowired
+  @Qualifier("dynamicConfigRestTemplate")
+  private RestTemplate restTemplate;
+
+  @Autowired(required = false)
+  private AsyncFanOutClient asyncFanOutClient;
+
+  @Autowired
+  @Qualifier("dynamicConfigConnectionManager")
+  private PoolingHttpClientConnectionManager connectionManager;
+
+  private volatile Map<String, ConfigField> configRegistry;
+
+  private ExecutorService fanOutExecutor;
+
+  private final InstanceCircuitBreakers circuitBreakers = new InstanceCircuitBreakers();
+
+  //identifies this run of this instance in ETags, instances started in the same millisecond still differ
+  private final String bootId = Long.toHexString(System.currentTimeMillis())
+      + Integer.toHexString(ThreadLocalRandom.current().nextInt());
+
+  @PostConstruct
+  public void init() {
+    fanOutExecutor = Executors.newFixedThreadPool(Math.max(1, configProps.getFanOutParallelism()),
+        new CustomizableThreadFactory("dynamic-config-fan-out-"));
+    metrics.setRegistrySize(() -> configRegistry == null ? 0 : configRegistry.size());
   }
 
-  public Map<String, Object> executeOnInstances(
+  @PreDestroy
+  public void destroy() {
+    if (fanOutExecutor != null) {
+      fanOutExecutor.shutdownNow();
+    }
+  }
+
+  public Map<String, InstanceResponse> executeOnInstances(
           String url, HttpMethod method, String body, List<ServiceInstance> instances, String op) {
-    Map<String, Object> responseList = new TreeMap<>();
-    ResponseEntity<Map<String, Object>> response;
+    return executeOnInstances(url, method, body, null, instances, op);
+  }
+
+  /**
+   * Same as {@link #executeOnInstances(String, HttpMethod, String, List, String)}, with extra request headers such as
+   * {@code If-None-Match}.
+   */
+  public Map<String, InstanceResponse> executeOnInstances(String url, HttpMethod method, String body,
+      HttpHeaders headers, List<ServiceInstance> instances, String op) {
+    Map<String, InstanceResponse> responses = new TreeMap<>();
+    fanOut(instanceInfo -> instanceInfo.getHomePageUrl() + url, instanceInfo -> body, headers, method, instances, op,
+        response -> responses.put(response.getInstanceId(), response));
+    return responses;
+  }
+
+  public void executeOnInstances(String url, HttpMethod method, String body, List<ServiceInstance> instances,
+      String op, Consumer<InstanceResponse> listener) {
+    executeOnInstances(url, method, body, null, instances, op, listener);
+  }
+
+  public void executeOnInstances(String url, HttpMethod method, String body, HttpHeaders headers,
+      List<ServiceInstance> instances, String op, Consumer<InstanceResponse> listener) {
+    fanOut(instanceInfo -> instanceInfo.getHomePageUrl() + url, instanceInfo -> body, headers, method, instances, op,
+        listener);
+  }
+
+  /**
+   * Fan-out where every instance gets its own path and body, e.g. instances of several services in one call.
+   */
+  public void executeOnInstances(Function<InstanceInfo, String> urlResolver,
+      Function<InstanceInfo, String> bodyResolver, HttpMethod method, List<ServiceInstance> instances, String op,
+      Consumer<InstanceResponse> listener) {
+    fanOut(instanceInfo -> instanceInfo.getHomePageUrl() + urlResolver.apply(instanceInfo), bodyResolver, null,
+        method, instances, op, listener);
+  }
+
+  public Map<String, InstanceResponse> checkHealth(List<ServiceInstance> instances, String op) {
+    Map<String, InstanceResponse> responses = new TreeMap<>();
+    fanOut(instanceInfo -> StringUtils.isEmpty(instanceInfo.getHealthCheckUrl())
+            ? instanceInfo.getHomePageUrl() + DEFAULT_HEALTH_PATH : instanceInfo.getHealthCheckUrl(),
+        instanceInfo -> null, null, HttpMethod.GET, instances, op,
+        response -> responses.put(response.getInstanceId(), response));
+    return responses;
+  }
+
+  private void fanOut(Function<InstanceInfo, String> httpUrlResolver, Function<InstanceInfo, String> bodyResolver,
+      HttpHeaders headers, HttpMethod method, List<ServiceInstance> instances, String op,
+      Consumer<InstanceResponse> responseListener) {
+    Consumer<InstanceResponse> listener = response -> {
+      metrics.recordInstanceCall(op, response);
+      responseListener.accept(response);
+    };
     RestTemplate restTemplate = getRestTemplate();
-    String appName = null;
-    String httpUrl = null;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configProps.getFanOutTimeout());
+    int maxInFlight = configProps.getFanOutMaxInFlight() > 0 ? configProps.getFanOutMaxInFlight() : Integer.MAX_VALUE;
+    //only GET and PUT are safe to send twice
+    int maxAttempts = 1 + (method == HttpMethod.GET || method == HttpMethod.PUT ? configProps.getFanOutRetries() : 0);
+    long circuitOpenTime = TimeUnit.MILLISECONDS.toNanos(configProps.getCircuitOpenTime());
+    long hedgeDelay = method == HttpMethod.GET && configProps.getFanOutHedgeDelay() > 0
+        ? TimeUnit.MILLISECONDS.toNanos(configProps.getFanOutHedgeDelay()) : 0;
+    BlockingQueue<Map.Entry<InstanceCall, InstanceResponse>> completions = new LinkedBlockingQueue<>();
+    PriorityQueue<InstanceCall.Timer> timers = new PriorityQueue<>();
+    Map<InstanceInfo, InstanceCall> calls = new IdentityHashMap<>();
+    Iterator<ServiceInstance> pending = instances.iterator();
 
-    for (ServiceInstance instance : instances) {
-      InstanceInfo instanceInfo = ((EurekaServiceInstance) instance).getInstanceInfo();
-      try {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.TEXT_PLAIN);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-        headers.set("isSlaveInstance", "true");
-        HttpEntity<String> entity = new HttpEntity<>(body, headers);
-        httpUrl = instanceInfo.getHomePageUrl() + url;
-        appName = instanceInfo.getAppName();
-        response = restTemplate.exchange(httpUrl, method, entity,
-            new ParameterizedTypeReference<Map<String, Object>>() {
-            });
-        log.info("op={}, status=OK, appName={}, url={}", op, appName, httpUrl);
-        if (response != null && response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-          responseList.putAll(response.getBody());
+    try {
+      while (true) {
+        //calls are only sent while fewer than maxInFlight are outstanding, the rest wait for a response to come back
+        while (calls.size() < maxInFlight && pending.hasNext()) {
+          InstanceInfo instanceInfo = ((EurekaServiceInstance) pending.next()).getInstanceInfo();
+          if (!circuitBreakers.tryAcquire(instanceInfo.getInstanceId(), configProps.getCircuitFailureThreshold(),
+              circuitOpenTime)) {
+            InstanceResponse response = new InstanceResponse(instanceInfo, InstanceResponse.Status.CIRCUIT_OPEN, 0);
+            response.setError("Circuit open");
+            listener.accept(response);
+            continue;
+          }
+          InstanceCall call = new InstanceCall(instanceInfo, httpUrlResolver.apply(instanceInfo),
+              bodyResolver.apply(instanceInfo));
+          calls.put(instanceInfo, call);
+          sendAttempt(call, restTemplate, method, headers, op, completions);
+          if (hedgeDelay > 0) {
+            timers.add(new InstanceCall.Timer(System.nanoTime() + hedgeDelay, call, false));
+          }
         }
-      } catch (Exception ex) {
-        log.error("op={}, status=KO, appName={}, url={}, Error={}", op, appName, httpUrl, ex);
-        throw new RuntimeException("Instance Execution: " + ex.getMessage()); //NOPMD
+        if (calls.isEmpty()) {
+          break;
+        }
+        long now = System.nanoTime();
+        while (!timers.isEmpty() && timers.peek().dueAt - now <= 0) {
+          InstanceCall.Timer timer = timers.poll();
+          InstanceCall call = timer.call;
+          if (call.done || !timer.retry && (call.hedged || call.outstanding == 0)) {
+            continue;
+          }
+          //a hedge races a second attempt against a slow one, whichever answers first wins
+          call.hedged |= !timer.retry;
+          sendAttempt(call, restTemplate, method, headers, op, completions);
+        }
+        long wakeUp = timers.isEmpty() || deadline - timers.peek().dueAt < 0 ? deadline : timers.peek().dueAt;
+        if (deadline - now <= 0) {
+          break;
+        }
+        Map.Entry<InstanceCall, InstanceResponse> completed =
+            completions.poll(Math.max(0, wakeUp - now), TimeUnit.NANOSECONDS);
+        if (completed == null) {
+          continue;
+        }
+        InstanceCall call = completed.getKey();
+        InstanceResponse response = completed.getValue();
+        if (call.done) {
+          continue;
+        }
+        call.outstanding--;
+        if (!isRetryable(response)) {
+          completeCall(call, response, calls, listener, circuitOpenTime);
+        } else if (call.outstanding == 0) {
+          long retryAt = System.nanoTime() + retryBackoff(call.attempts.size());
+          if (call.attempts.size() < maxAttempts && deadline - retryAt > 0) {
+            log.warn("op={}, status=KO, instanceId={}, desc=Retrying, attempt={}, Error={}",
+                op, call.instanceInfo.getInstanceId(), call.attempts.size() + 1, response.getError());
+            timers.add(new InstanceCall.Timer(retryAt, call, true));
+          } else {
+            completeCall(call, response, calls, listener, circuitOpenTime);
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      calls.values().forEach(InstanceCall::cancel);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Instance Execution: interrupted"); //NOPMD
+    } catch (RuntimeException ex) {
+      calls.values().forEach(InstanceCall::cancel);
+      throw ex;
+    }
+
+    List<InstanceInfo> timedOut = new ArrayList<>(calls.keySet());
+    calls.values().forEach(call -> {
+      call.cancel();
+      circuitBreakers.onFailure(call.instanceInfo.getInstanceId(), configProps.getCircuitFailureThreshold(),
+          circuitOpenTime);
+    });
+    pending.forEachRemaining(instance -> timedOut.add(((EurekaServiceInstance) instance).getInstanceInfo()));
+    timedOut.forEach(instanceInfo -> {
+      log.error("op={}, status=KO, appName={}, instanceId={}, Error=Deadline exceeded",
+          op, instanceInfo.getAppName(), instanceInfo.getInstanceId());
+      InstanceResponse response = new InstanceResponse(instanceInfo, InstanceResponse.Status.TIMEOUT,
+          configProps.getFanOutTimeout());
+      response.setError("Deadline exceeded");
+      InstanceCall call = calls.get(instanceInfo);
+      response.setAttempts(call == null ? 0 : call.attempts.size());
+      listener.accept(response);
+    });
+  }
+
+  private void sendAttempt(InstanceCall call, RestTemplate restTemplate, HttpMethod method, HttpHeaders headers,
+      String op, BlockingQueue<Map.Entry<InstanceCall, InstanceResponse>> completions) {
+    Consumer<InstanceResponse> completion =
+        response -> completions.add(new AbstractMap.SimpleImmutableEntry<>(call, response));
+    call.outstanding++;
+    try {
+      call.attempts.add(submitCall(restTemplate, call.instanceInfo, call.httpUrl, method, headers, call.body, op,
+          completion));
+    } catch (RuntimeException ex) {
+      //a rejected submission only fails this instance
+      call.attempts.add(CompletableFuture.completedFuture(null));
+      InstanceResponse response = new InstanceResponse(call.instanceInfo, InstanceResponse.Status.FAILED, 0);
+      response.setError(ExceptionUtils.getMessage(ex));
+      completion.accept(response);
+    }
+  }
+
+  private void completeCall(InstanceCall call, InstanceResponse response, Map<InstanceInfo, InstanceCall> calls,
+      Consumer<InstanceResponse> listener, long circuitOpenTime) {
+    call.done = true;
+    call.cancel();
+    calls.remove(call.instanceInfo);
+    //a 429 comes from an instance that is alive, only a missing answer counts against its circuit
+    if (isRetryable(response) && response.getHttpStatus() != 429) {
+      circuitBreakers.onFailure(call.instanceInfo.getInstanceId(), configProps.getCircuitFailureThreshold(),
+          circuitOpenTime);
+    } else {
+      circuitBreakers.onSuccess(call.instanceInfo.getInstanceId());
+    }
+    response.setAttempts(call.attempts.size());
+    listener.accept(response);
+  }
+
+  /**
+   * Equal jitter: half the exponential backoff plus a random part of the other half, so retries of many instances do
+   * not line up but still back off.
+   */
+  private long retryBackoff(int attempts) {
+    long backoff = TimeUnit.MILLISECONDS.toNanos(configProps.getFanOutRetryBackoff()) << Math.min(attempts - 1, 16);
+    return backoff <= 0 ? 0 : ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+  }
+
+  /**
+   * The instance did not answer or its gateway gave up; an error from the instance itself would fail again.
+   */
+  private static boolean isRetryable(InstanceResponse response) {
+    return response.getStatus() == InstanceResponse.Status.FAILED && (response.getHttpStatus() == 0
+        || response.getHttpStatus() == 429 || response.getHttpStatus() >= 502 && response.getHttpStatus() <= 504);
+  }
+
+  private Future<?> submitCall(RestTemplate restTemplate, InstanceInfo instanceInfo, String httpUrl,
+      HttpMethod method, HttpHeaders extraHeaders, String body, String op, Consumer<InstanceResponse> completion) {
+    if (asyncFanOutClient != null) {
+      return asyncFanOutClient.execute(instanceInfo, httpUrl, method, extraHeaders, body, op, completion);
+    }
+    return fanOutExecutor.submit(() -> {
+      InstanceResponse response;
+      try {
+        response = executeOnInstance(restTemplate, instanceInfo, httpUrl, method, extraHeaders, body, op);
+      } catch (RuntimeException | Error ex) {
+        response = new InstanceResponse(instanceInfo, InstanceResponse.Status.FAILED, 0);
+        response.setError(ExceptionUtils.getMessage(ex));
+      }
+      completion.accept(response);
+    });
+  }
+
+  private InstanceResponse executeOnInstance(RestTemplate restTemplate, InstanceInfo instanceInfo,
+      String httpUrl, HttpMethod method, HttpHeaders extraHeaders, String body, String op) {
+    String appName = instanceInfo.getAppName();
+    long start = System.nanoTime();
+    InstanceResponse instanceResponse;
+    try {
+      HttpHeaders headers = new HttpHeaders();
+      if (extraHeaders != null) {
+        headers.putAll(extraHeaders);
       }
+      headers.setContentType(MediaType.TEXT_PLAIN);
+      headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+      headers.set("isSlaveInstance", "true");
+      HttpEntity<String> entity = new HttpEntity<>(body, headers);
+      ResponseEntity<Map<String, Object>> response = restTemplate.exchange(httpUrl, method, entity,
+          new ParameterizedTypeReference<Map<String, Object>>() {
+          });
+      instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.OK, elapsed(start));
+      instanceResponse.setHttpStatus(response.getStatusCodeValue());
+      instanceResponse.setBody(response.getBody());
+      instanceResponse.setEtag(response.getHeaders().getETag());
+      log.info("op={}, status=OK, appName={}, url={}, latency={}", op, appName, httpUrl, instanceResponse.getLatency());
+    } catch (Exception ex) {
+      instanceResponse = new InstanceResponse(instanceInfo, InstanceResponse.Status.FAILED, elapsed(start));
+      if (ex instanceof HttpStatusCodeException) {
+        instanceResponse.setHttpStatus(((HttpStatusCodeException) ex).getRawStatusCode());
+      }
+      instanceResponse.setError(ExceptionUtils.getMessage(ex));
+      log.error("op={}, status=KO, appName={}, url={}, Error={}", op, appName, httpUrl, ex);
     }
-    return responseList;
+    return instanceResponse;
+  }
+
+  private static long elapsed(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
   }
 
   public Map<String, Object> getConfig(boolean includeYml) {
     Map<String, Object> configs = new TreeMap<>();
-    getConfigMap().forEach((key, field) -> {
+    getConfigMap().forEach((key, configField) -> {
       try {
-        Object ultimateTarget = getUltimateTargetBeanOfField(field);
-        boolean accessibility = field.isAccessible();
-        field.setAccessible(true);
-        Object value = field.get(ultimateTarget);
-        field.setAccessible(accessibility);
-        configs.put(key, value);
+        configs.put(key, configField.getValue());
       } catch (Exception ex) {
-        log.warn("op=getConfig, status=KO, desc=Failed for configs field={}, error={}", field.getName(), ex);
+        log.warn("op=getConfig, status=KO, desc=Failed for configs field={}, error={}", key, ex);
       }
     });
     if (includeYml) {
-      configs.put("ZZZ - APPLICATION YML PROPERTIES - ZZZ" ,getYmlConfig());
+      configs.put(YML_PROPERTIES_KEY ,getYmlConfig());
     }
     return configs;
   }
 
+  public Map<String, Object> getConfig(boolean includeYml, Long since) {
+    ConfigSnapshot snapshot = snapshotHolder.getSnapshot();
+    if (since == null || since > snapshot.getRevision()) {
+      //no baseline or a baseline from before a restart, only the full config is meaningful
+      return getConfig(includeYml);
+    }
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<String, Object> configs = new TreeMap<>();
+    Map<String, Object> ymlConfigs = new TreeMap<>();
+    snapshot.getKeyRevisions().forEach((key, revision) -> {
+      if (revision > since) {
+        ConfigField configField = registry.get(key);
+        if (configField != null) {
+          configs.put(key, configField.getValue());
+        } else if (includeYml) {
+          ymlConfigs.put(key, configurableEnvironment.getProperty(key));
+        }
+      }
+    });
+    if (!ymlConfigs.isEmpty()) {
+      configs.put(YML_PROPERTIES_KEY, ymlConfigs);
+    }
+    return configs;
+  }
+
+  /**
+   * Whether one of the ETags was issued by this run of this instance, so the revisions it carries are ours.
+   */
+  public boolean isIssuedHere(String ifNoneMatch) {
+    if (StringUtils.isEmpty(ifNoneMatch)) {
+      return false;
+    }
+    for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+      String tag = StringUtils.removeStart(StringUtils.removeStart(candidate.trim(), "W/"), "\"");
+      if (bootId.equals(StringUtils.substringBefore(tag, "-"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public String getConfigETag(boolean includeYml, Long since) {
+    StringBuilder etag = new StringBuilder("\"").append(bootId).append('-')
+        .append(snapshotHolder.getSnapshot().getRevision());
+    if (includeYml) {
+      etag.append("-yml");
+    }
+    if (since != null) {
+      etag.append("-since").append(since);
+    }
+    return etag.append('"').toString();
+  }
+
+  public Map<String, Object> getConfigDigest() {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<String, String> keyDigests = new TreeMap<>();
+    registry.forEach((key, configField) -> keyDigests.put(key, digest(configField.getValue())));
+    snapshotHolder.getSnapshot().getKeyRevisions().keySet().stream()
+        .filter(key -> !registry.containsKey(key))
+        .forEach(key -> keyDigests.put(key, digest(configurableEnvironment.getProperty(key))));
+
+    StringBuilder root = new StringBuilder();
+    keyDigests.forEach((key, digest) -> root.append(key).append('=').append(digest).append('\n'));
+    Map<String, Object> configDigest = new LinkedHashMap<>();
+    configDigest.put(DIGEST_ROOT_KEY, digest(root));
+    configDigest.put(DIGEST_KEYS_KEY, keyDigests);
+    return configDigest;
+  }
+
+  public Map<String, Object> getConfigValues(Collection<String> keys) {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<String, Object> configs = new TreeMap<>();
+    keys.forEach(key -> {
+      ConfigField configField = registry.get(key);
+      configs.put(key, configField != null
+          ? toJsonValue(configField.getValue()) : configurableEnvironment.getProperty(key));
+    });
+    return configs;
+  }
+
+  public ConfigChange getOverrides(String serviceId) {
+    ConfigSnapshot snapshot = snapshotHolder.getSnapshot();
+    Map<String, String> overrides = new TreeMap<>();
+    getConfigValues(snapshot.getKeyRevisions().keySet()).forEach((key, value) -> {
+      if (value != null) {
+        overrides.put(key, ValueConverters.format(value));
+      }
+    });
+    return new ConfigChange(snapshot.getRevision(), serviceId, overrides, System.currentTimeMillis());
+  }
+
+  public Map<String, String> applyOverrides(Map<String, String> overrides, String op) {
+    if (overrides.isEmpty()) {
+      return overrides;
+    }
+    //a key may not exist in this version of the service and is skipped, the others are applied all-or-nothing
+    Set<String> knownKeys = getKnownKeys(overrides.keySet());
+    Map<String, String> known = new LinkedHashMap<>();
+    overrides.forEach((key, value) -> {
+      if (knownKeys.contains(key)) {
+        known.put(key, value);
+      } else {
+        log.warn("op={}, status=KO, key={}, desc=Unknown key skipped", op, key);
+      }
+    });
+    if (known.isEmpty()) {
+      return known;
+    }
+    try {
+      updateConfigs(known);
+      return known;
+    } catch (Exception ex) {
+      log.error("op={}, status=KO, keys={}, error={}", op, known.keySet(), ex.getMessage());
+      return Collections.emptyMap();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> diffConfig(String url, List<ServiceInstance> instances, String op) {
+    Map<String, InstanceResponse> digests = executeOnInstances(url, HttpMethod.GET, null, instances, op);
+    Map<String, Object> unreachable = new TreeMap<>();
+    Map<String, Map<String, String>> keyDigestsByInstance = new TreeMap<>();
+    Set<String> roots = new HashSet<>();
+    digests.forEach((instanceId, response) -> {
+      if (response.isSuccessful() && response.getBody() != null) {
+        roots.add(String.valueOf(response.getBody().get(DIGEST_ROOT_KEY)));
+        keyDigestsByInstance.put(instanceId, (Map<String, String>) response.getBody().get(DIGEST_KEYS_KEY));
+      } else {
+        unreachable.put(instanceId, response.getError());
+      }
+    });
+
+    Set<String> driftKeys = new TreeSet<>();
+    if (roots.size() > 1) {
+      Set<String> allKeys = new TreeSet<>();
+      keyDigestsByInstance.values().forEach(keyDigests -> allKeys.addAll(keyDigests.keySet()));
+      allKeys.forEach(key -> {
+        if (keyDigestsByInstance.values().stream().map(keyDigests -> keyDigests.get(key)).distinct().count() > 1) {
+          driftKeys.add(key);
+        }
+      });
+    }
+
+    Map<String, Object> drift = new TreeMap<>();
+    if (!driftKeys.isEmpty()) {
+      //instances agreeing on every drifting key are asked only once, through a representative
+      Map<List<String>, List<String>> groups = new LinkedHashMap<>();
+      keyDigestsByInstance.forEach((instanceId, keyDigests) -> groups.computeIfAbsent(
+          driftKeys.stream().map(keyDigests::get).collect(Collectors.toList()), digest -> new ArrayList<>())
+          .add(instanceId));
+      Map<String, ServiceInstance> instancesById = instances.stream().collect(Collectors.toMap(
+          instance -> ((EurekaServiceInstance) instance).getInstanceInfo().getInstanceId(), instance -> instance,
+          (first, second) -> first));
+      List<ServiceInstance> representatives = groups.values().stream()
+          .map(group -> instancesById.get(group.get(0))).collect(Collectors.toList());
+      String valuesUrl = UriComponentsBuilder.fromUriString(url)
+          .queryParam("keys", driftKeys.toArray()).build().toUriString();
+      Map<String, InstanceResponse> values = executeOnInstances(valuesUrl, HttpMethod.GET, null, representatives, op);
+
+      driftKeys.forEach(key -> {
+        Map<String, Map<String, Object>> variants = new LinkedHashMap<>();
+        groups.values().forEach(group -> {
+          String digest = keyDigestsByInstance.get(group.get(0)).get(key);
+          Map<String, Object> variant = variants.computeIfAbsent(String.valueOf(digest), absent -> {
+            Map<String, Object> newVariant = new LinkedHashMap<>();
+            InstanceResponse response = values.get(group.get(0));
+            newVariant.put("value", response.isSuccessful() && response.getBody() != null
+                ? response.getBody().get(key) : null);
+            newVariant.put("instances", new ArrayList<String>());
+            return newVariant;
+          });
+          ((List<String>) variant.get("instances")).addAll(group);
+        });
+        drift.put(key, variants.values());
+      });
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("inSync", driftKeys.isEmpty() && unreachable.isEmpty());
+    result.put("instances", keyDigestsByInstance.size());
+    result.put("drift", drift);
+    result.put("unreachable", unreachable);
+    return result;
+  }
+
+  private static Object toJsonValue(Object value) {
+    //values are sent back as updates, e.g. on a rollback, so everything without a JSON equivalent goes as its text
+    return value == null || value instanceof Number || value instanceof Boolean ? value : ValueConverters.format(value);
+  }
+
+  private static String digest(Object value) {
+    return DigestUtils.md5DigestAsHex(String.valueOf(ValueConverters.format(value)).getBytes(StandardCharsets.UTF_8))
+        .substring(0, 16);
+  }
+
   private Map<String, Map<String, Object>> getYmlConfig() {
     MutablePropertySources propertySources = configurableEnvironment.getPropertySources();
     Map<String, Map<String, Object>> applicationConfig = new HashMap<>();
@@ -138,58 +624,212 @@ public class DynamicConfigService {
         applicationConfig.put(propertySource.getName(), ((MapPropertySource) propertySource).getSource());
       }
     });
+    if (!propertyOverlay.getOverrides().isEmpty()) {
+      applicationConfig.put(PropertyOverlay.PROPERTY_SOURCE_NAME, propertyOverlay.getOverrides());
+    }
     return applicationConfig;
   }
 
   public boolean updateConfig(String propKey, String propValue) {
-    Map<String, Field> configs = getConfigMap();
-    boolean isUpdated = false;
-    if (configs.containsKey(propKey)) {
-      try {
-        Field field = configs.get(propKey);
-        boolean accessibility = field.isAccessible();
-        PropertyEditor editor = PropertyEditorManager.findEditor(field.getType());
-        editor.setAsText(propValue);
-        Object ultimateTarget = getUltimateTargetBeanOfField(field);
-        field.setAccessible(true);
-        field.set(ultimateTarget, editor.getValue());
-        field.setAccessible(accessibility);
-        isUpdated = true;
-      } catch (Exception ex) {
-        log.error("op=updateConfig, status=KO, desc=Config update failed.", ex);
-        throw new RuntimeException("Oops! Failed to update config."); //NOPMD
-      }
-    } else {
-      for (Map.Entry<String, Map<String, Object>> entry : getYmlConfig().entrySet()) {
-        if (entry.getValue().containsKey(propKey)) {
-          entry.getValue().put(propKey, propValue);
-          MutablePropertySources propertySources = configurableEnvironment.getPropertySources();
-          propertySources.replace(entry.getKey(), new MapPropertySource(entry.getKey(), entry.getValue()));
-          isUpdated = true;
+    return updateConfigs(Collections.singletonMap(propKey, propValue));
+  }
+
+  public synchronized boolean updateConfigs(Map<String, String> props) {
+    long start = System.nanoTime();
+    boolean updated = false;
+    try {
+      updated = applyConfigs(props);
+      return updated;
+    } finally {
+      metrics.recordUpdate("updateConfig", updated, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Checks the keys and converts the values as updateConfigs does, without applying anything.
+   */
+  public void validateConfigs(Map<String, String> props) {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<ConfigField, Object> fieldValues = new LinkedHashMap<>();
+    Map<String, String> ymlValues = new LinkedHashMap<>();
+    convertConfigs(props, registry, fieldValues, ymlValues);
+    addPlaceholderFieldValues(ymlValues, registry, fieldValues);
+  }
+
+  private boolean applyConfigs(Map<String, String> props) {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<ConfigField, Object> fieldValues = new LinkedHashMap<>();
+    Map<String, String> ymlValues = new LinkedHashMap<>();
+    convertConfigs(props, registry, fieldValues, ymlValues);
+    addPlaceholderFieldValues(ymlValues, registry, fieldValues);
+
+    Map<String, Object> previousOverrides = ymlValues.isEmpty()
+        ? Collections.emptyMap() : propertyOverlay.apply(ymlValues);
+    try {
+      applyFieldValues(fieldValues);
+    } catch (RuntimeException ex) {
+      propertyOverlay.apply(previousOverrides);
+      throw ex;
+    }
+
+    Map<String, Object> fieldChanges = new HashMap<>();
+    fieldValues.forEach((configField, value) -> fieldChanges.put(configField.getKey(), value));
+    if (!ymlValues.isEmpty()) {
+      //a rebound bean may have changed fields the snapshot serves to getters
+      snapshotHolder.getSnapshot().getValues().forEach((key, value) -> {
+        ConfigField configField = registry.get(key);
+        Object current = configField == null ? null : configField.getValue();
+        if (configField != null && !fieldChanges.containsKey(key) && !Objects.equals(current, value)) {
+          fieldChanges.put(key, current);
+        }
+      });
+    }
+    Set<String> changedKeys = new HashSet<>(props.keySet());
+    changedKeys.addAll(fieldChanges.keySet());
+    //publishing the snapshot through a volatile write makes all field writes above visible at once to its readers
+    ConfigSnapshot snapshot = snapshotHolder.getSnapshot().with(fieldChanges, changedKeys);
+    snapshotHolder.publish(snapshot);
+    applicationContext.publishEvent(new ConfigUpdatedEvent(this, props, snapshot.getRevision()));
+    return true;
+  }
+
+  private void convertConfigs(Map<String, String> props, Map<String, ConfigField> registry,
+      Map<ConfigField, Object> fieldValues, Map<String, String> ymlValues) {
+    Map<String, Map<String, Object>> ymlConfig = null;
+    for (Map.Entry<String, String> prop : props.entrySet()) {
+      ConfigField configField = registry.get(prop.getKey());
+      if (configField != null) {
+        try {
+          fieldValues.put(configField, configField.convert(prop.getValue()));
+        } catch (Exception ex) {
+          log.error("op=updateConfig, status=KO, desc=Config update failed.", ex);
+          throw new RuntimeException("Oops! Failed to update config."); //NOPMD
+        }
+      } else {
+        if (ymlConfig == null) {
+          ymlConfig = getYmlConfig();
         }
+        if (!isKnownKey(prop.getKey(), registry, ymlConfig)) {
+          throw new RuntimeException("Oops! Please enter correct key."); //NOPMD
+        }
+        ymlValues.put(prop.getKey(), prop.getValue());
       }
     }
-    if (!isUpdated) {
-      throw new RuntimeException("Oops! Please enter correct key."); //NOPMD
+  }
+
+  private void applyFieldValues(Map<ConfigField, Object> fieldValues) {
+    if (fieldValues.isEmpty()) {
+      return;
+    }
+    Map<ConfigField, Object> previousValues = new LinkedHashMap<>();
+    try {
+      fieldValues.forEach((configField, value) -> {
+        previousValues.put(configField, configField.getValue());
+        configField.setValue(value);
+      });
+    } catch (Exception ex) {
+      previousValues.forEach(ConfigField::setValue);
+      log.error("op=updateConfig, status=KO, desc=Config update failed and was rolled back.", ex);
+      throw new RuntimeException("Oops! Failed to update config."); //NOPMD
     }
-    return true;
   }
 
-  public boolean updateLog(String packageName, String logLevel) {
-    LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-    if (loggerContext.exists(packageName) != null && EnumUtils.isValidEnum(LogLevel.class, logLevel)) {
+  private void addPlaceholderFieldValues(Map<String, String> ymlValues, Map<String, ConfigField> registry,
+      Map<ConfigField, Object> fieldValues) {
+    if (ymlValues.isEmpty()) {
+      return;
+    }
+    //@Value fields were resolved once at startup, they are resolved again against the new values
+    for (ConfigField configField : registry.values()) {
+      Value value = configField.getField().getAnnotation(Value.class);
+      if (value == null || fieldValues.containsKey(configField)
+          || ymlValues.keySet().stream().noneMatch(key -> isPlaceholderOf(key, value))) {
+        continue;
+      }
+      String text = PLACEHOLDER_HELPER.replacePlaceholders(value.value(),
+          key -> ymlValues.containsKey(key) ? ymlValues.get(key) : configurableEnvironment.getProperty(key));
       try {
-        Logger logger = loggerContext.getLogger(packageName);
-        Level level = Level.toLevel(logLevel, logger.getLevel());
-        logger.setLevel(level);
+        fieldValues.put(configField, configField.convert(text));
       } catch (Exception ex) {
-        log.error("op=updateLog, status=KO, desc=Log update failed.", ex);
-        throw new RuntimeException("Oops! Failed to update log level."); //NOPMD
+        log.error("op=updateConfig, status=KO, desc=Config update failed for field={}.", configField.getKey(), ex);
+        throw new RuntimeException("Oops! Failed to update config."); //NOPMD
       }
-    } else {
-      throw new RuntimeException("Oops! Incorrect log level or package."); //NOPMD
     }
-    return true;
+  }
+
+  /**
+   * The keys this version of the service has a field, property or bound bean for, in the given order.
+   */
+  public Set<String> getKnownKeys(Collection<String> keys) {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<String, Map<String, Object>> ymlConfig = null;
+    Set<String> knownKeys = new LinkedHashSet<>();
+    for (String key : keys) {
+      if (!registry.containsKey(key) && ymlConfig == null) {
+        ymlConfig = getYmlConfig();
+      }
+      if (registry.containsKey(key) || isKnownKey(key, registry, ymlConfig)) {
+        knownKeys.add(key);
+      }
+    }
+    return knownKeys;
+  }
+
+  private boolean isKnownKey(String key, Map<String, ConfigField> registry,
+      Map<String, Map<String, Object>> ymlConfig) {
+    return registry.containsKey(key) || ymlConfig.values().stream().anyMatch(source -> source.containsKey(key))
+        || propertyOverlay.isBound(key) || isPlaceholderOfField(key, registry);
+  }
+
+  private static boolean isPlaceholderOfField(String key, Map<String, ConfigField> registry) {
+    return registry.values().stream()
+        .map(configField -> configField.getField().getAnnotation(Value.class))
+        .anyMatch(value -> value != null && isPlaceholderOf(key, value));
+  }
+
+  private static boolean isPlaceholderOf(String key, Value value) {
+    return value.value().contains("${" + key + "}") || value.value().contains("${" + key + ":");
+  }
+
+  public Map<String, List<FlagRule>> getFlagRules() {
+    return flagRuleHolder.getRules();
+  }
+
+  public synchronized Map<String, List<FlagRule>> updateFlagRules(Map<String, List<FlagRule>> rules) {
+    Map<String, ConfigField> registry = getConfigMap();
+    Map<String, List<FlagRule>> flagRules = new TreeMap<>(flagRuleHolder.getRules());
+    rules.forEach((key, keyRules) -> {
+      ConfigField configField = registry.get(key);
+      if (configField == null) {
+        throw new RuntimeException("Oops! Please enter correct key."); //NOPMD
+      }
+      if (keyRules == null || keyRules.isEmpty()) {
+        flagRules.remove(key);
+        return;
+      }
+      for (FlagRule rule : keyRules) {
+        boolean matchesAttribute = !StringUtils.isEmpty(rule.getAttribute()) && rule.getIn() != null;
+        boolean matchesPercentage = !StringUtils.isEmpty(rule.getHashBy()) && rule.getPercentage() != null
+            && rule.getPercentage() >= 0 && rule.getPercentage() <= 100;
+        if (!matchesAttribute && !matchesPercentage || rule.getValue() == null) {
+          throw new RuntimeException("Oops! A rule needs a value and attribute/in or hashBy/percentage."); //NOPMD
+        }
+        //without hashBy there is nothing to bucket by and the percentage would match every request
+        if (StringUtils.isEmpty(rule.getHashBy()) != (rule.getPercentage() == null) || !matchesPercentage
+            && rule.getPercentage() != null) {
+          throw new RuntimeException("Oops! A rule needs hashBy and percentage together, for " + key + "."); //NOPMD
+        }
+        try {
+          configField.convert(rule.getValue());
+        } catch (Exception ex) {
+          throw new RuntimeException("Oops! Rule value is not valid for " + key + "."); //NOPMD
+        }
+      }
+      flagRules.put(key, Collections.unmodifiableList(new ArrayList<>(keyRules)));
+    });
+    flagRuleHolder.publish(flagRules);
+    log.info("op=updateFlagRules, status=OK, keys={}", rules.keySet());
+    return flagRuleHolder.getRules();
   }
 
   private Object getUltimateTargetBeanOfField(Field field) {
@@ -229,41 +869,71 @@ public class DynamicConfigService {
 
   private boolean isValidField(Field field) {
     //To filtering only Boolean or boolean fields use - ClassUtils.isAssignable(Boolean.class, field.getType());
-    return BeanUtils.isSimpleValueType(field.getType());
+    return ValueConverters.isSupported(field.getGenericType());
+  }
+
+  @EventListener
+  public void onContextRefreshed(ContextRefreshedEvent event) {
+    if (event.getApplicationContext() == applicationContext) {
+      configRegistry = buildConfigRegistry();
+      log.info("op=buildConfigRegistry, status=OK, desc=Registered {} dynamic configs", configRegistry.size());
+    }
   }
 
-  private Map<String, Field> getConfigMap() {
-    Map<String, Field> configs = new HashMap<>();
+  private Map<String, ConfigField> getConfigMap() {
+    Map<String, ConfigField> registry = configRegistry;
+    if (registry == null) {
+      synchronized (this) {
+        registry = configRegistry;
+        if (registry == null) {
+          registry = buildConfigRegistry();
+          configRegistry = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  private Map<String, ConfigField> buildConfigRegistry() {
+    Map<String, Field> fields = new HashMap<>();
     for (String beanName : applicationContext.getBeanDefinitionNames()) {
       Object bean = applicationContext.getBean(beanName);
       if (bean != null) {
-        configs.putAll(getUltimateTargetField(
-                FieldUtils.getFieldsListWithAnnotation(bean.getClass(), Value.class)));
+        getUltimateTargetField(FieldUtils.getFieldsListWithAnnotation(bean.getClass(), Value.class))
+            .forEach(fields::putIfAbsent);
       }
     }
     Map<String, Object> beansWithAnnotation = applicationContext.getBeansWithAnnotation(Configuration.class);
     beansWithAnnotation.forEach((key, value) ->
-            configs.putAll(getUltimateTargetField(FieldUtils.getAllFieldsList(value.getClass()))));
-    return configs;
-  }
+        getUltimateTargetField(FieldUtils.getAllFieldsList(value.getClass())).forEach(fields::putIfAbsent));
 
-  public RestTemplate getRestTemplate() {
-    RestTemplate pingRestTemplate = new RestTemplate(
-        clientHttpRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient())));
-    pingRestTemplate.setErrorHandler(new DefaultResponseErrorHandler());
-    return pingRestTemplate;
+    Map<String, ConfigField> registry = new HashMap<>();
+    fields.forEach((key, field) -> {
+      try {
+        Object ultimateTarget = getUltimateTargetBeanOfField(field);
+        registry.put(key, new ConfigField(key, field, ultimateTarget, ValueConverters.forType(field.getGenericType())));
+      } catch (Exception ex) {
+        log.warn("op=buildConfigRegistry, status=KO, desc=Failed to resolve target for field={}, error={}",
+            key, ex);
+      }
+    });
+    return Collections.unmodifiableMap(registry);
   }
 
-  private ClientHttpRequestFactory clientHttpRequestFactory(HttpComponentsClientHttpRequestFactory httpClientFactory) {
-    httpClientFactory.setReadTimeout(configProps.getReadTimeout());
-    httpClientFactory.setConnectTimeout(configProps.getConnectionTimeout());
-    return httpClientFactory;
+  public Map<String, Object> getConnectionPoolStats() {
+    PoolStats totalStats = connectionManager.getTotalStats();
+    Map<String, Object> stats = new TreeMap<>();
+    stats.put("leased", totalStats.getLeased());
+    stats.put("available", totalStats.getAvailable());
+    stats.put("pending", totalStats.getPending());
+    stats.put("max", totalStats.getMax());
+    stats.put("maxPerRoute", connectionManager.getDefaultMaxPerRoute());
+    stats.put("routes", connectionManager.getRoutes().size());
+    stats.put("openCircuits", circuitBreakers.getOpenCircuits());
+    return stats;
   }
 
-  private CloseableHttpClient httpClient() {
-    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-    connectionManager.setMaxTotal(configProps.getMaxTotalConnections());
-    connectionManager.closeIdleConnections(30, TimeUnit.SECONDS);
-    return HttpClients.custom().setConnectionManager(connectionManager).build();
+  public RestTemplate getRestTemplate() {
+    return restTemplate;
   }
 }
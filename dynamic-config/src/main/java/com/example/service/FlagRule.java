@@ -0,0 +1,20 @@
+package com.example.service;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One rule of a feature flag: the value applies when the request header {@code attribute} is one of {@code in}
+ * and/or the request falls into the first {@code percentage} percent of buckets hashed from header {@code hashBy}.
+ */
+@Data
+public class FlagRule {
+
+  private String attribute;
+  private List<String> in;
+  private String hashBy;
+  private Double percentage;
+  private String value;
+
+}
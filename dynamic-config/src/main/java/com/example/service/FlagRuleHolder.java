@@ -0,0 +1,22 @@
+package com.example.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class FlagRuleHolder {
+
+  private volatile Map<String, List<FlagRule>> rules = Collections.emptyMap();
+
+  public Map<String, List<FlagRule>> getRules() {
+    return rules;
+  }
+
+  void publish(Map<String, List<FlagRule>> newRules) {
+    rules = Collections.unmodifiableMap(newRules);
+  }
+
+}
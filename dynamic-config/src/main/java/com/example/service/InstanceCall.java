@@ -0,0 +1,54 @@
+package com.example.service;
+
+import com.netflix.appinfo.InstanceInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * State of the call to one instance during a fan-out: every attempt sent, including retries and hedges, and how many
+ * of them are still waiting for a response.
+ */
+final class InstanceCall {
+
+  final InstanceInfo instanceInfo;
+  final String httpUrl;
+  final String body;
+  final List<Future<?>> attempts = new ArrayList<>();
+  int outstanding;
+  boolean hedged;
+  boolean done;
+
+  InstanceCall(InstanceInfo instanceInfo, String httpUrl, String body) {
+    this.instanceInfo = instanceInfo;
+    this.httpUrl = httpUrl;
+    this.body = body;
+  }
+
+  void cancel() {
+    attempts.forEach(attempt -> attempt.cancel(true));
+  }
+
+  /**
+   * A retry or hedge due at {@code dueAt}, in {@link System#nanoTime()}.
+   */
+  static final class Timer implements Comparable<Timer> {
+
+    final long dueAt;
+    final InstanceCall call;
+    final boolean retry;
+
+    Timer(long dueAt, InstanceCall call, boolean retry) {
+      this.dueAt = dueAt;
+      this.call = call;
+      this.retry = retry;
+    }
+
+    @Override
+    public int compareTo(Timer other) {
+      return Long.compare(dueAt, other.dueAt);
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.example.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Circuit breaker per instance id. After {@code threshold} failures in a row an instance is skipped for
+ * {@code openTime}; then a single call per period is let through, which closes the circuit again or keeps it open.
+ */
+class InstanceCircuitBreakers {
+
+  private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+  boolean tryAcquire(String instanceId, int threshold, long openTimeNanos) {
+    if (threshold <= 0 || instanceId == null) {
+      return true;
+    }
+    Breaker breaker = breakers.get(instanceId);
+    return breaker == null || breaker.tryAcquire(System.nanoTime(), openTimeNanos);
+  }
+
+  void onSuccess(String instanceId) {
+    if (instanceId != null) {
+      breakers.remove(instanceId);
+    }
+  }
+
+  void onFailure(String instanceId, int threshold, long openTimeNanos) {
+    if (threshold <= 0 || instanceId == null) {
+      return;
+    }
+    breakers.computeIfAbsent(instanceId, id -> new Breaker()).onFailure(System.nanoTime(), threshold, openTimeNanos);
+  }
+
+  /**
+   * Open circuits with the milliseconds until the next trial call, negative once it is due.
+   */
+  Map<String, Long> getOpenCircuits() {
+    long now = System.nanoTime();
+    Map<String, Long> open = new TreeMap<>();
+    breakers.forEach((instanceId, breaker) -> {
+      synchronized (breaker) {
+        if (breaker.openUntil != 0) {
+          open.put(instanceId, (breaker.openUntil - now) / 1_000_000);
+        }
+      }
+    });
+    return open;
+  }
+
+  private static final class Breaker {
+
+    private int failures;
+    private long openUntil;
+
+    private synchronized boolean tryAcquire(long now, long openTimeNanos) {
+      if (openUntil == 0) {
+        return true;
+      }
+      if (now - openUntil < 0) {
+        return false;
+      }
+      //the trial call keeps the circuit open for another period, a success removes the breaker
+      open(now, openTimeNanos);
+      return true;
+    }
+
+    private synchronized void onFailure(long now, int threshold, long openTimeNanos) {
+      if (++failures >= threshold) {
+        open(now, openTimeNanos);
+      }
+    }
+
+    private void open(long now, long openTimeNanos) {
+      openUntil = now + openTimeNanos;
+      if (openUntil == 0) {
+        openUntil = 1;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,38 @@
+package com.example.service;
+
+import com.netflix.appinfo.InstanceInfo;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class InstanceResponse {
+
+  public enum Status {
+    OK, FAILED, TIMEOUT, CIRCUIT_OPEN
+  }
+
+  private String instanceId;
+  private String ipAddress;
+  private Status status;
+  private int httpStatus;
+  private long latency;
+  private Map<String, Object> body;
+  private String etag;
+  private String error;
+  private int attempts;
+
+  InstanceResponse(InstanceInfo instanceInfo, Status status, long latency) {
+    this.instanceId = instanceInfo.getInstanceId();
+    this.ipAddress = instanceInfo.getIPAddr();
+    this.status = status;
+    this.latency = latency;
+  }
+
+  public boolean isSuccessful() {
+    return status == Status.OK;
+  }
+
+}
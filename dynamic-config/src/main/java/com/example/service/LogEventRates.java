@@ -0,0 +1,51 @@
+package com.example.service;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the events written per logger, attached to the root logger. {@link #roll()} turns the counts of the last
+ * window into events per second.
+ */
+class LogEventRates extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+  private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+  private volatile Map<String, Double> rates = Collections.emptyMap();
+  private long windowStart = System.nanoTime();
+
+  @Override
+  protected void append(ILoggingEvent event) {
+    LongAdder count = counts.get(event.getLoggerName());
+    if (count == null) {
+      count = counts.computeIfAbsent(event.getLoggerName(), name -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  synchronized void roll() {
+    long now = System.nanoTime();
+    double seconds = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - windowStart)) / 1000d;
+    windowStart = now;
+    Map<String, Double> newRates = new HashMap<>();
+    counts.forEach((loggerName, count) -> {
+      long events = count.sumThenReset();
+      if (events > 0) {
+        newRates.put(loggerName, events / seconds);
+      }
+    });
+    rates = Collections.unmodifiableMap(newRates);
+  }
+
+  Map<String, Double> getRates() {
+    return rates;
+  }
+
+}
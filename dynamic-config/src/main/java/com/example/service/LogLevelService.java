@@ -0,0 +1,220 @@
+package com.example.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Sets log levels for logger name prefixes, optionally only for a while, and reports the effective levels together
+ * with the events per second written below each prefix.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class LogLevelService {
+
+  static final long RATE_WINDOW = 10000L;
+
+  private static final String APPENDER_NAME = "dynamic-config-event-rates";
+
+  @Autowired
+  private DynamicConfigMetrics metrics;
+
+  private final Map<String, PendingRevert> pendingReverts = new HashMap<>();
+  private final LogEventRates eventRates = new LogEventRates();
+
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  public void init() {
+    LoggerContext loggerContext = getLoggerContext();
+    eventRates.setContext(loggerContext);
+    eventRates.setName(APPENDER_NAME);
+    eventRates.start();
+    loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(eventRates);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-config-log-"));
+    scheduler.scheduleAtFixedRate(eventRates::roll, RATE_WINDOW, RATE_WINDOW, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    getLoggerContext().getLogger(Logger.ROOT_LOGGER_NAME).detachAppender(eventRates);
+    eventRates.stop();
+  }
+
+  public boolean updateLog(String loggerName, String logLevel) {
+    return !updateLogs(Collections.singletonMap(loggerName, logLevel), null).isEmpty();
+  }
+
+  public synchronized Map<String, String> updateLogs(Map<String, String> logLevels, Long ttl) {
+    long start = System.nanoTime();
+    boolean updated = false;
+    try {
+      Map<String, String> applied = applyLogLevels(logLevels, ttl);
+      updated = true;
+      return applied;
+    } finally {
+      metrics.recordUpdate("updateLog", updated, System.nanoTime() - start);
+    }
+  }
+
+  public synchronized Map<String, Object> getLogLevels(Collection<String> loggerNames) {
+    LoggerContext loggerContext = getLoggerContext();
+    Map<String, Double> rates = eventRates.getRates();
+    Collection<String> names = loggerNames;
+    if (names == null || names.isEmpty()) {
+      names = new ArrayList<>(rates.keySet());
+      for (Logger logger : loggerContext.getLoggerList()) {
+        if (logger.getLevel() != null) {
+          names.add(logger.getName());
+        }
+      }
+    }
+
+    Map<String, Object> levels = new TreeMap<>();
+    for (String name : names) {
+      //a report must not create loggers, one that does not exist yet inherits from its nearest existing ancestor
+      Logger logger = Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(name)
+          ? loggerContext.getLogger(Logger.ROOT_LOGGER_NAME) : loggerContext.exists(name);
+      String loggerName = logger == null ? name : logger.getName();
+      double eventsPerSecond = 0;
+      for (Map.Entry<String, Double> rate : rates.entrySet()) {
+        if (isSameOrDescendant(rate.getKey(), loggerName)) {
+          eventsPerSecond += rate.getValue();
+        }
+      }
+      Map<String, Object> level = new LinkedHashMap<>();
+      level.put("level", logger == null || logger.getLevel() == null ? null : logger.getLevel().toString());
+      level.put("effectiveLevel", (logger == null ? getAncestor(loggerContext, name) : logger)
+          .getEffectiveLevel().toString());
+      level.put("eventsPerSecond", eventsPerSecond);
+      PendingRevert pendingRevert = pendingReverts.get(loggerName);
+      if (pendingRevert != null) {
+        level.put("revertAt", pendingRevert.revertAt);
+      }
+      levels.put(loggerName, level);
+    }
+    return levels;
+  }
+
+  private Map<String, String> applyLogLevels(Map<String, String> logLevels, Long ttl) {
+    Map<String, Level> levels = new LinkedHashMap<>();
+    logLevels.forEach((loggerName, logLevel) -> {
+      String levelName = StringUtils.upperCase(StringUtils.trim(logLevel));
+      if (StringUtils.isBlank(loggerName) || !EnumUtils.isValidEnum(LogLevel.class, levelName)) {
+        throw new RuntimeException("Oops! Incorrect log level or package."); //NOPMD
+      }
+      //logback has no FATAL, it is logged as ERROR
+      levels.put(loggerName.trim(), Level.toLevel(LogLevel.FATAL.name().equals(levelName) ? "ERROR" : levelName));
+    });
+
+    LoggerContext loggerContext = getLoggerContext();
+    Map<String, String> applied = new TreeMap<>();
+    levels.forEach((loggerName, level) -> {
+      Logger prefixLogger = loggerContext.getLogger(loggerName);
+      List<Logger> loggers = new ArrayList<>();
+      loggers.add(prefixLogger);
+      //descendants with a level of their own would not inherit the new one
+      for (Logger logger : loggerContext.getLoggerList()) {
+        if (logger != prefixLogger && logger.getLevel() != null
+            && isSameOrDescendant(logger.getName(), prefixLogger.getName())) {
+          loggers.add(logger);
+        }
+      }
+      for (Logger logger : loggers) {
+        scheduleRevert(logger, ttl);
+        logger.setLevel(level);
+        applied.put(logger.getName(), level.toString());
+      }
+    });
+    log.info("op=updateLog, status=OK, levels={}, ttl={}", applied, ttl);
+    return applied;
+  }
+
+  private void scheduleRevert(Logger logger, Long ttl) {
+    PendingRevert previous = pendingReverts.remove(logger.getName());
+    if (previous != null) {
+      previous.future.cancel(false);
+    }
+    if (ttl != null && ttl > 0) {
+      //a repeated change extends the window but still reverts to the level from before the first change
+      Level originalLevel = previous != null ? previous.level : logger.getLevel();
+      PendingRevert pendingRevert = new PendingRevert(originalLevel, System.currentTimeMillis() + ttl);
+      pendingRevert.future = scheduler.schedule(() -> revert(logger, pendingRevert), ttl, TimeUnit.MILLISECONDS);
+      pendingReverts.put(logger.getName(), pendingRevert);
+    }
+  }
+
+  private synchronized void revert(Logger logger, PendingRevert pendingRevert) {
+    if (pendingReverts.get(logger.getName()) == pendingRevert) {
+      pendingReverts.remove(logger.getName());
+      logger.setLevel(pendingRevert.level);
+      log.info("op=revertLog, status=OK, logger={}, level={}", logger.getName(), pendingRevert.level);
+    }
+  }
+
+  private static Logger getAncestor(LoggerContext loggerContext, String loggerName) {
+    String name = loggerName;
+    int separator;
+    while ((separator = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$'))) > 0) {
+      name = name.substring(0, separator);
+      Logger ancestor = loggerContext.exists(name);
+      if (ancestor != null) {
+        return ancestor;
+      }
+    }
+    return loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+  }
+
+  private static boolean isSameOrDescendant(String loggerName, String prefix) {
+    return Logger.ROOT_LOGGER_NAME.equalsIgnoreCase(prefix) || loggerName.equals(prefix)
+        || loggerName.startsWith(prefix) && (loggerName.charAt(prefix.length()) == '.'
+        || loggerName.charAt(prefix.length()) == '$');
+  }
+
+  private static LoggerContext getLoggerContext() {
+    return (LoggerContext) LoggerFactory.getILoggerFactory();
+  }
+
+  private static final class PendingRevert {
+
+    private final Level level;
+    private final long revertAt;
+    private ScheduledFuture<?> future;
+
+    private PendingRevert(Level level, long revertAt) {
+      this.level = level;
+      this.revertAt = revertAt;
+    }
+  }
+
+}
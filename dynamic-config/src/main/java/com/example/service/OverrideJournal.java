@@ -0,0 +1,286 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Append-only journal of runtime overrides, replayed by {@link ConfigCatchUp} before the instance takes traffic.
+ * Every record is {@code length, crc32, key, value}; a torn or corrupt tail is cut off on replay.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamic-config.journalPath")
+public class OverrideJournal {
+
+  static final String JOURNAL_FILE = "overrides.journal";
+  static final String SNAPSHOT_FILE = "overrides.snapshot";
+
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DynamicConfigService configService;
+
+  private final Map<String, String> overrides = new LinkedHashMap<>();
+  private final Object compactionLock = new Object();
+
+  private Path journalFile;
+  private Path snapshotFile;
+  private FileChannel journal;
+  private ScheduledExecutorService syncScheduler;
+  private int recordsSinceCompaction;
+  private boolean dirty;
+  private volatile boolean replaying;
+
+  @PostConstruct
+  public void init() throws IOException {
+    Path directory = Paths.get(configProps.getJournalPath());
+    Files.createDirectories(directory);
+    journalFile = directory.resolve(JOURNAL_FILE);
+    snapshotFile = directory.resolve(SNAPSHOT_FILE);
+
+    long start = System.nanoTime();
+    readRecords(snapshotFile);
+    recordsSinceCompaction = 0;
+    long validLength = readRecords(journalFile);
+    journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    journal.truncate(validLength);
+    journal.position(validLength);
+    log.info("op=journalLoad, status=OK, path={}, overrides={}, latency={}", directory, overrides.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    syncScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-config-journal-"));
+    syncScheduler.scheduleWithFixedDelay(this::sync, configProps.getJournalSyncInterval(),
+        configProps.getJournalSyncInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (syncScheduler != null) {
+      syncScheduler.shutdownNow();
+    }
+    sync();
+    try {
+      if (journal != null) {
+        journal.close();
+      }
+    } catch (IOException ex) {
+      log.warn("op=journalClose, status=KO, error={}", ex.getMessage());
+    }
+  }
+
+  public void replay() {
+    Map<String, String> replay;
+    synchronized (this) {
+      replay = new LinkedHashMap<>(overrides);
+    }
+    if (replay.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    replaying = true;
+    try {
+      configService.applyOverrides(replay, "journalReplay");
+    } finally {
+      replaying = false;
+    }
+    compact();
+    log.info("op=journalReplay, status=OK, overrides={}, latency={}", replay.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  @EventListener
+  public void onConfigUpdated(ConfigUpdatedEvent event) {
+    if (replaying) {
+      return;
+    }
+    boolean compactionDue;
+    synchronized (this) {
+      try {
+        for (Map.Entry<String, String> prop : event.getProps().entrySet()) {
+          writeFully(journal, encode(prop.getKey(), prop.getValue()));
+          overrides.put(prop.getKey(), prop.getValue());
+          recordsSinceCompaction++;
+        }
+        dirty = true;
+      } catch (IOException ex) {
+        log.error("op=journalAppend, status=KO, props={}, error={}", event.getProps(), ex.getMessage());
+        return;
+      }
+      compactionDue = recordsSinceCompaction >= configProps.getJournalCompactThreshold();
+    }
+    if (compactionDue) {
+      syncScheduler.execute(this::compact);
+    }
+  }
+
+  public synchronized Map<String, String> getOverrides() {
+    return new LinkedHashMap<>(overrides);
+  }
+
+  void sync() {
+    synchronized (this) {
+      if (!dirty || journal == null || !journal.isOpen()) {
+        return;
+      }
+      dirty = false;
+    }
+    //appends go on while the journal is forced
+    try {
+      journal.force(false);
+    } catch (IOException ex) {
+      synchronized (this) {
+        dirty = true;
+      }
+      log.error("op=journalSync, status=KO, error={}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Writes and syncs the snapshot without holding the lock appends need, then swaps out the journal records the
+   * snapshot covers and keeps the ones appended in the meantime.
+   */
+  void compact() {
+    synchronized (compactionLock) {
+      try {
+        Map<String, String> snapshot;
+        long compactedLength;
+        int compactedRecords;
+        synchronized (this) {
+          if (recordsSinceCompaction == 0 && Files.exists(snapshotFile)) {
+            return;
+          }
+          snapshot = new LinkedHashMap<>(overrides);
+          compactedLength = journal.position();
+          compactedRecords = recordsSinceCompaction;
+        }
+        Path tempFile = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        writeSnapshot(tempFile, snapshot);
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+          ByteBuffer tail = ByteBuffer.allocate((int) (journal.position() - compactedLength));
+          //records appended while the snapshot was written
+          while (tail.hasRemaining()) {
+            if (journal.read(tail, compactedLength + tail.position()) < 0) {
+              break;
+            }
+          }
+          tail.flip();
+          journal.truncate(0);
+          journal.position(0);
+          writeFully(journal, tail);
+          recordsSinceCompaction -= compactedRecords;
+          //a journal replayed over the snapshot gives the same overrides, so the truncation is synced lazily
+          dirty = true;
+        }
+        log.info("op=journalCompact, status=OK, overrides={}", snapshot.size());
+      } catch (IOException ex) {
+        log.error("op=journalCompact, status=KO, error={}", ex.getMessage());
+      }
+    }
+  }
+
+  void writeSnapshot(Path file, Map<String, String> snapshot) throws IOException {
+    try (FileChannel channel = FileChannel.open(file,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Map.Entry<String, String> override : snapshot.entrySet()) {
+        writeFully(channel, encode(override.getKey(), override.getValue()));
+      }
+      channel.force(true);
+    }
+  }
+
+  private long readRecords(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      CRC32 crc = new CRC32();
+      while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 8 || length > buffer.remaining()) {
+          buffer.position(start);
+          break;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        crc.reset();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          buffer.position(start);
+          break;
+        }
+        ByteBuffer record = ByteBuffer.wrap(payload);
+        String key = readString(record);
+        String value = readString(record);
+        overrides.remove(key);
+        overrides.put(key, value);
+        recordsSinceCompaction++;
+      }
+      if (buffer.hasRemaining()) {
+        log.warn("op=journalLoad, status=KO, file={}, desc=Discarding {} bytes of torn or corrupt records",
+            file, buffer.remaining());
+      }
+      return buffer.position();
+    }
+  }
+
+  private static ByteBuffer encode(String key, String value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+    int length = 8 + keyBytes.length + valueBytes.length;
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+    buffer.putInt(length).putInt(0)
+        .putInt(keyBytes.length).put(keyBytes)
+        .putInt(valueBytes.length).put(valueBytes);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+    buffer.putInt(4, (int) crc.getValue());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+package com.example.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationBeanFactoryMetadata;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.BindHandler;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.handler.IgnoreErrorsBindHandler;
+import org.springframework.boot.context.properties.bind.handler.NoUnboundElementsBindHandler;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Runtime overrides of environment properties, kept in a property source ahead of all others so the YAML sources are
+ * never copied or replaced. {@code @ConfigurationProperties} beans are indexed by prefix and only the ones whose
+ * prefix covers a changed key are bound again.
+ */
+@Slf4j
+@Component
+public class PropertyOverlay {
+
+  static final String PROPERTY_SOURCE_NAME = "dynamicConfigOverrides";
+
+  @Autowired
+  private ConfigurableEnvironment configurableEnvironment;
+
+  @Autowired
+  private ApplicationContext applicationContext;
+
+  private final Map<String, Object> overrides = new ConcurrentHashMap<>();
+
+  private volatile List<BoundBean> boundBeans;
+
+  @PostConstruct
+  public void init() {
+    MutablePropertySources propertySources = configurableEnvironment.getPropertySources();
+    if (!propertySources.contains(PROPERTY_SOURCE_NAME)) {
+      propertySources.addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, overrides));
+    }
+  }
+
+  public Map<String, Object> getOverrides() {
+    return Collections.unmodifiableMap(overrides);
+  }
+
+  public boolean isBound(String key) {
+    ConfigurationPropertyName name = toName(key);
+    return name != null && getBoundBeans().stream().anyMatch(boundBean -> boundBean.covers(name));
+  }
+
+  /**
+   * Puts the values into the overlay (a {@code null} value removes the override) and rebinds the affected beans.
+   * When a bean fails to bind, the previous overrides are restored before the error is thrown.
+   *
+   * @return the overrides the values replaced, {@code null} for keys that had none, to be passed back on a rollback
+   */
+  public synchronized Map<String, Object> apply(Map<String, ?> values) {
+    Map<String, Object> previousValues = put(values);
+    try {
+      rebind(values.keySet());
+    } catch (RuntimeException ex) {
+      put(previousValues);
+      rebind(values.keySet());
+      log.error("op=rebindProperties, status=KO, keys={}", values.keySet(), ex);
+      throw new RuntimeException("Oops! Failed to bind the new value."); //NOPMD
+    }
+    return previousValues;
+  }
+
+  @EventListener
+  public void onContextRefreshed(ContextRefreshedEvent event) {
+    if (event.getApplicationContext() == applicationContext) {
+      boundBeans = null;
+    }
+  }
+
+  private Map<String, Object> put(Map<String, ?> values) {
+    Map<String, Object> previousValues = new LinkedHashMap<>();
+    values.forEach((key, value) -> previousValues.put(key,
+        value == null ? overrides.remove(key) : overrides.put(key, value)));
+    return previousValues;
+  }
+
+  private void rebind(Set<String> keys) {
+    Set<BoundBean> affected = new LinkedHashSet<>();
+    for (String key : keys) {
+      ConfigurationPropertyName name = toName(key);
+      if (name != null) {
+        getBoundBeans().stream().filter(boundBean -> boundBean.covers(name)).forEach(affected::add);
+      }
+    }
+    if (affected.isEmpty()) {
+      return;
+    }
+    Binder binder = Binder.get(configurableEnvironment);
+    for (BoundBean boundBean : affected) {
+      binder.bind(boundBean.prefix, Bindable.ofInstance(boundBean.target).withAnnotations(boundBean.annotation),
+          boundBean.getBindHandler());
+      log.info("op=rebindProperties, status=OK, bean={}, prefix={}", boundBean.beanName, boundBean.prefix);
+    }
+  }
+
+  private List<BoundBean> getBoundBeans() {
+    List<BoundBean> beans = boundBeans;
+    if (beans == null) {
+      beans = findBoundBeans();
+      boundBeans = beans;
+    }
+    return beans;
+  }
+
+  private List<BoundBean> findBoundBeans() {
+    Map<String, Object> beans = new HashMap<>();
+    //@ConfigurationProperties on a @Bean method is only known to the metadata Spring Boot records while binding
+    if (applicationContext.containsBean(ConfigurationBeanFactoryMetadata.BEAN_NAME)) {
+      beans.putAll(applicationContext.getBean(ConfigurationBeanFactoryMetadata.BEAN_NAME,
+          ConfigurationBeanFactoryMetadata.class).getBeansWithFactoryAnnotation(ConfigurationProperties.class));
+    }
+    for (String beanName : applicationContext.getBeanNamesForAnnotation(ConfigurationProperties.class)) {
+      beans.putIfAbsent(beanName, applicationContext.getBean(beanName));
+    }
+
+    List<BoundBean> found = new ArrayList<>();
+    beans.forEach((beanName, bean) -> {
+      try {
+        Object target = getUltimateTarget(bean);
+        ConfigurationProperties annotation = AnnotationUtils.findAnnotation(
+            AopUtils.getTargetClass(target), ConfigurationProperties.class);
+        if (annotation == null && applicationContext.containsBean(ConfigurationBeanFactoryMetadata.BEAN_NAME)) {
+          annotation = applicationContext.getBean(ConfigurationBeanFactoryMetadata.BEAN_NAME,
+              ConfigurationBeanFactoryMetadata.class).findFactoryAnnotation(beanName, ConfigurationProperties.class);
+        }
+        if (annotation != null) {
+          found.add(new BoundBean(beanName, target, annotation));
+        }
+      } catch (Exception ex) {
+        log.warn("op=findBoundBeans, status=KO, desc=Failed to resolve bean={}, error={}", beanName, ex);
+      }
+    });
+    return Collections.unmodifiableList(found);
+  }
+
+  private static Object getUltimateTarget(Object bean) throws Exception {
+    Object target = bean;
+    while (AopUtils.isAopProxy(target) && target instanceof Advised) {
+      target = ((Advised) target).getTargetSource().getTarget();
+    }
+    return target;
+  }
+
+  private static ConfigurationPropertyName toName(String key) {
+    //camel case keys like dynamic-config.readTimeout are only valid names in their lower case form
+    String name = key.trim().toLowerCase(Locale.ENGLISH);
+    return !name.isEmpty() && ConfigurationPropertyName.isValid(name) ? ConfigurationPropertyName.of(name) : null;
+  }
+
+  private static final class BoundBean {
+
+    private final String beanName;
+    private final Object target;
+    private final ConfigurationProperties annotation;
+    private final ConfigurationPropertyName prefix;
+
+    private BoundBean(String beanName, Object target, ConfigurationProperties annotation) {
+      this.beanName = beanName;
+      this.target = target;
+      this.annotation = annotation;
+      this.prefix = ConfigurationPropertyName.of(annotation.prefix());
+    }
+
+    private boolean covers(ConfigurationPropertyName name) {
+      return prefix.isEmpty() || prefix.equals(name) || prefix.isAncestorOf(name);
+    }
+
+    private BindHandler getBindHandler() {
+      //the same handlers Spring Boot uses for the initial binding
+      BindHandler handler = annotation.ignoreInvalidFields() ? new IgnoreErrorsBindHandler() : BindHandler.DEFAULT;
+      return annotation.ignoreUnknownFields() ? handler : new NoUnboundElementsBindHandler(handler);
+    }
+  }
+
+}
@@ -0,0 +1,26 @@
+package com.example.service;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Data
+public class Rollout {
+
+  public enum Status {
+    RUNNING, COMPLETED, ROLLED_BACK, FAILED
+  }
+
+  private String id;
+  private String serviceId;
+  private Map<String, String> props;
+  private long bakeTime;
+  private volatile Status status;
+  private volatile String message;
+  private long startedAt;
+  private volatile long updatedAt;
+  private final List<RolloutWave> waves = new CopyOnWriteArrayList<>();
+
+}
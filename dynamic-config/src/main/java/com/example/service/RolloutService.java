@@ -0,0 +1,300 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import com.example.editor.ValueConverters;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Applies a config change in waves: every wave is pushed, left to bake, and the health of all instances changed so
+ * far is checked before the next one starts. Any failure rolls every changed instance back to its previous values.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class RolloutService {
+
+  private static final int MAX_ROLLOUTS = 100;
+  private static final String OP = "rollout";
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DynamicConfigService configService;
+
+  @Autowired
+  private ConfigChangeFeed changeFeed;
+
+  private final Map<String, Rollout> rollouts = new LinkedHashMap<>();
+
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  public void init() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-config-rollout-"));
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public synchronized Rollout start(String serviceId, String body, Map<String, String> props, String url,
+      String valuesUrl, List<ServiceInstance> instances, List<ServiceInstance> firstWave, List<Integer> percentages,
+      Long bakeTime) {
+    if (rollouts.values().stream().anyMatch(rollout ->
+        rollout.getServiceId().equals(serviceId) && rollout.getStatus() == Rollout.Status.RUNNING)) {
+      throw new RuntimeException("Oops! A rollout is already running for the service."); //NOPMD
+    }
+
+    Rollout rollout = new Rollout();
+    rollout.setId(UUID.randomUUID().toString());
+    rollout.setServiceId(serviceId);
+    rollout.setProps(props);
+    rollout.setBakeTime(bakeTime != null ? bakeTime : configProps.getRolloutBakeTime());
+    rollout.setStatus(Rollout.Status.RUNNING);
+    rollout.setStartedAt(System.currentTimeMillis());
+    rollout.setUpdatedAt(rollout.getStartedAt());
+
+    RolloutRun run = new RolloutRun(rollout, body, url,
+        UriComponentsBuilder.fromUriString(valuesUrl).queryParam("keys", props.keySet().toArray()).build().toUriString());
+    planWaves(run, instances, firstWave, percentages);
+
+    rollouts.put(rollout.getId(), rollout);
+    Iterator<Rollout> oldest = rollouts.values().iterator();
+    while (rollouts.size() > MAX_ROLLOUTS && oldest.hasNext()) {
+      if (oldest.next().getStatus() != Rollout.Status.RUNNING) {
+        oldest.remove();
+      }
+    }
+    log.info("op={}, status=OK, serviceId={}, rolloutId={}, waves={}, props={}", OP, serviceId, rollout.getId(),
+        rollout.getWaves().size(), props);
+    scheduler.execute(() -> applyWave(run, 0));
+    return rollout;
+  }
+
+  public synchronized Rollout getRollout(String rolloutId) {
+    Rollout rollout = rollouts.get(rolloutId);
+    if (rollout == null) {
+      throw new RuntimeException("Oops! Rollout not found."); //NOPMD
+    }
+    return rollout;
+  }
+
+  public static List<Integer> parsePercentages(String waves) {
+    List<Integer> percentages = new ArrayList<>();
+    for (String wave : waves.split(",")) {
+      if (wave.trim().isEmpty()) {
+        continue;
+      }
+      int percentage;
+      try {
+        percentage = Integer.parseInt(wave.trim().replace("%", ""));
+      } catch (NumberFormatException ex) {
+        throw new RuntimeException("Oops! Rollout waves must be percentages like 10,50,100."); //NOPMD
+      }
+      if (percentage <= 0 || percentage > 100
+          || !percentages.isEmpty() && percentage <= percentages.get(percentages.size() - 1)) {
+        throw new RuntimeException("Oops! Rollout waves must be increasing percentages up to 100."); //NOPMD
+      }
+      percentages.add(percentage);
+    }
+    if (percentages.isEmpty() || percentages.get(percentages.size() - 1) != 100) {
+      percentages.add(100);
+    }
+    return percentages;
+  }
+
+  private void planWaves(RolloutRun run, List<ServiceInstance> instances, List<ServiceInstance> firstWave,
+      List<Integer> percentages) {
+    Comparator<ServiceInstance> byInstanceId = Comparator.comparing(RolloutService::getInstanceId);
+    List<ServiceInstance> ordered = firstWave.stream().sorted(byInstanceId).collect(Collectors.toList());
+    instances.stream().filter(instance -> !ordered.contains(instance)).sorted(byInstanceId).forEach(ordered::add);
+
+    int total = ordered.size();
+    int covered = 0;
+    List<int[]> waveBounds = new ArrayList<>();
+    if (!firstWave.isEmpty()) {
+      covered = firstWave.size();
+      waveBounds.add(new int[]{covered * 100 / total, covered});
+    }
+    for (int percentage : percentages) {
+      int upTo = Math.max(1, total * percentage / 100);
+      if (upTo > covered) {
+        waveBounds.add(new int[]{percentage, upTo});
+        covered = upTo;
+      }
+    }
+
+    int from = 0;
+    for (int[] bound : waveBounds) {
+      List<ServiceInstance> waveInstances = new ArrayList<>(ordered.subList(from, bound[1]));
+      RolloutWave wave = new RolloutWave();
+      wave.setIndex(run.waveInstances.size());
+      wave.setPercentage(bound[0]);
+      wave.setInstanceIds(waveInstances.stream().map(RolloutService::getInstanceId).collect(Collectors.toList()));
+      run.waveInstances.add(waveInstances);
+      run.rollout.getWaves().add(wave);
+      from = bound[1];
+    }
+  }
+
+  private void applyWave(RolloutRun run, int index) {
+    Rollout rollout = run.rollout;
+    RolloutWave wave = rollout.getWaves().get(index);
+    List<ServiceInstance> instances = run.waveInstances.get(index);
+    wave.setStartedAt(System.currentTimeMillis());
+    wave.setStatus(RolloutWave.Status.APPLYING);
+    touch(rollout);
+    try {
+      Map<String, InstanceResponse> previous =
+          configService.executeOnInstances(run.valuesUrl, HttpMethod.GET, null, instances, OP);
+      for (InstanceResponse response : previous.values()) {
+        if (!response.isSuccessful()) {
+          fail(run, wave, "Could not read previous values from " + response.getInstanceId());
+          return;
+        }
+        run.previousValues.put(response.getInstanceId(), response.getBody());
+      }
+
+      run.applied.addAll(instances);
+      Map<String, InstanceResponse> responses =
+          configService.executeOnInstances(run.url, HttpMethod.PUT, run.body, instances, OP);
+      responses.forEach((instanceId, response) -> wave.getApplied().put(instanceId, response.getStatus()));
+      if (responses.values().stream().anyMatch(response -> !response.isSuccessful())) {
+        fail(run, wave, "Update failed on some instances of wave " + index);
+        return;
+      }
+      wave.setStatus(RolloutWave.Status.BAKING);
+      touch(rollout);
+      scheduler.schedule(() -> verifyWave(run, index), rollout.getBakeTime(), TimeUnit.MILLISECONDS);
+    } catch (Exception ex) {
+      fail(run, wave, ex.getMessage());
+    }
+  }
+
+  private void verifyWave(RolloutRun run, int index) {
+    Rollout rollout = run.rollout;
+    RolloutWave wave = rollout.getWaves().get(index);
+    try {
+      Map<String, InstanceResponse> health = configService.checkHealth(run.applied, OP);
+      boolean healthy = true;
+      for (InstanceResponse response : health.values()) {
+        Object status = response.getBody() != null ? response.getBody().get("status") : null;
+        boolean up = response.isSuccessful() && (status == null || "UP".equals(status));
+        wave.getHealth().put(response.getInstanceId(), up ? "UP" : Objects.toString(status, response.getError()));
+        healthy &= up;
+      }
+      wave.setCompletedAt(System.currentTimeMillis());
+      if (!healthy) {
+        wave.setStatus(RolloutWave.Status.UNHEALTHY);
+        fail(run, wave, "Instances unhealthy after wave " + index);
+        return;
+      }
+      wave.setStatus(RolloutWave.Status.HEALTHY);
+      if (index + 1 < rollout.getWaves().size()) {
+        touch(rollout);
+        applyWave(run, index + 1);
+      } else {
+        //only a change that reached every instance becomes the state new instances catch up on
+        changeFeed.publish(rollout.getServiceId(), rollout.getProps());
+        rollout.setStatus(Rollout.Status.COMPLETED);
+        touch(rollout);
+        log.info("op={}, status=OK, rolloutId={}, desc=Completed", OP, rollout.getId());
+      }
+    } catch (Exception ex) {
+      fail(run, wave, ex.getMessage());
+    }
+  }
+
+  private void fail(RolloutRun run, RolloutWave wave, String reason) {
+    Rollout rollout = run.rollout;
+    if (wave.getStatus() != RolloutWave.Status.UNHEALTHY) {
+      wave.setStatus(RolloutWave.Status.FAILED);
+    }
+    wave.setCompletedAt(System.currentTimeMillis());
+    log.error("op={}, status=KO, rolloutId={}, wave={}, desc={}, rolling back {} instances", OP, rollout.getId(),
+        wave.getIndex(), reason, run.applied.size());
+
+    boolean restored = true;
+    Map<Map<String, Object>, List<ServiceInstance>> groups = new LinkedHashMap<>();
+    for (ServiceInstance instance : run.applied) {
+      Map<String, Object> previous = run.previousValues.get(getInstanceId(instance));
+      if (previous != null) {
+        groups.computeIfAbsent(previous, values -> new ArrayList<>()).add(instance);
+      }
+    }
+    for (Map.Entry<Map<String, Object>, List<ServiceInstance>> group : groups.entrySet()) {
+      String body = group.getKey().entrySet().stream()
+          .filter(value -> value.getValue() != null)
+          .map(value -> value.getKey() + ":" + ValueConverters.format(value.getValue()))
+          .collect(Collectors.joining("\n"));
+      if (body.isEmpty()) {
+        continue;
+      }
+      restored &= configService.executeOnInstances(run.url, HttpMethod.PUT, body, group.getValue(), OP)
+          .values().stream().allMatch(InstanceResponse::isSuccessful);
+    }
+    rollout.getWaves().stream()
+        .filter(previousWave -> previousWave.getIndex() < wave.getIndex())
+        .forEach(previousWave -> previousWave.setStatus(RolloutWave.Status.ROLLED_BACK));
+    rollout.setStatus(restored ? Rollout.Status.ROLLED_BACK : Rollout.Status.FAILED);
+    rollout.setMessage(restored ? reason : reason + "; rollback failed on some instances");
+    touch(rollout);
+  }
+
+  private static void touch(Rollout rollout) {
+    rollout.setUpdatedAt(System.currentTimeMillis());
+  }
+
+  private static String getInstanceId(ServiceInstance instance) {
+    return ((EurekaServiceInstance) instance).getInstanceInfo().getInstanceId();
+  }
+
+  private static final class RolloutRun {
+
+    private final Rollout rollout;
+    private final String body;
+    private final String url;
+    private final String valuesUrl;
+    private final List<List<ServiceInstance>> waveInstances = new ArrayList<>();
+    private final List<ServiceInstance> applied = new ArrayList<>();
+    private final Map<String, Map<String, Object>> previousValues = new LinkedHashMap<>();
+
+    private RolloutRun(Rollout rollout, String body, String url, String valuesUrl) {
+      this.rollout = rollout;
+      this.body = body;
+      this.url = url;
+      this.valuesUrl = valuesUrl;
+    }
+
+  }
+
+}
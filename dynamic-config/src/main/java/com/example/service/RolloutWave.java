@@ -0,0 +1,25 @@
+package com.example.service;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Data
+public class RolloutWave {
+
+  public enum Status {
+    PENDING, APPLYING, BAKING, HEALTHY, UNHEALTHY, FAILED, ROLLED_BACK
+  }
+
+  private int index;
+  private int percentage;
+  private List<String> instanceIds;
+  private volatile Status status = Status.PENDING;
+  private volatile long startedAt;
+  private volatile long completedAt;
+  private final Map<String, InstanceResponse.Status> applied = new ConcurrentHashMap<>();
+  private final Map<String, String> health = new ConcurrentHashMap<>();
+
+}
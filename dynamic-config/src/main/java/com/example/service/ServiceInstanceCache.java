@@ -0,0 +1,153 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.discovery.event.HeartbeatMonitor;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Local view of the instances of each service, indexed by IP address and instance id. It is dropped whenever the
+ * Eureka client refreshes its registry, and after {@code instanceCacheTtl} as a safety net. A service without
+ * instances is not cached, so one that is just registering is found as soon as the Eureka client knows it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+    name = {"ribbon.eureka.enabled", "dynamic-config.apiEnabled"}, havingValue = "true", matchIfMissing = false)
+public class ServiceInstanceCache {
+
+  public static final String ZONE_METADATA_KEY = "zone";
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DiscoveryClient discoveryClient;
+
+  private final Map<String, InstanceView> views = new ConcurrentHashMap<>();
+  private final HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor();
+
+  @EventListener(HeartbeatEvent.class)
+  public void onHeartbeat(HeartbeatEvent event) {
+    if (heartbeatMonitor.update(event.getValue())) {
+      views.clear();
+    }
+  }
+
+  public List<ServiceInstance> getInstances(String serviceId) {
+    return getView(serviceId).instances;
+  }
+
+  public ServiceInstance getByIpAddress(String serviceId, String ipAddress) {
+    return getView(serviceId).byIpAddress.get(ipAddress);
+  }
+
+  public ServiceInstance getByInstanceId(String serviceId, String instanceId) {
+    return getView(serviceId).byInstanceId.get(instanceId);
+  }
+
+  /**
+   * Instances in the given zone carrying every given {@code key=value} metadata label; a null zone or no labels
+   * match everything.
+   */
+  public List<ServiceInstance> select(String serviceId, String zone, Collection<String> labels) {
+    List<ServiceInstance> instances = getInstances(serviceId);
+    if (StringUtils.isEmpty(zone) && (labels == null || labels.isEmpty())) {
+      return instances;
+    }
+    Map<String, String> requiredLabels = new HashMap<>();
+    if (labels != null) {
+      for (String label : labels) {
+        if (!label.contains("=")) {
+          throw new RuntimeException("Oops! Label must be in key=value format."); //NOPMD
+        }
+        requiredLabels.put(StringUtils.substringBefore(label, "=").trim(), StringUtils.substringAfter(label, "=").trim());
+      }
+    }
+    if (!StringUtils.isEmpty(zone)) {
+      requiredLabels.put(ZONE_METADATA_KEY, zone);
+    }
+    return instances.stream()
+        .filter(instance -> requiredLabels.entrySet().stream()
+            .allMatch(label -> label.getValue().equals(instance.getMetadata().get(label.getKey()))))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Instances sharing a {@link SharedSnapshot} file on the same host, keyed by host and file; instances without one
+   * are left out.
+   */
+  public Map<String, List<ServiceInstance>> groupBySharedSnapshot(List<ServiceInstance> instances) {
+    Map<String, List<ServiceInstance>> groups = new LinkedHashMap<>();
+    for (ServiceInstance instance : instances) {
+      String path = instance.getMetadata() == null ? null : instance.getMetadata().get(SharedSnapshot.METADATA_KEY);
+      if (!StringUtils.isEmpty(path) && !StringUtils.isEmpty(instance.getHost())) {
+        groups.computeIfAbsent(instance.getHost() + ":" + path, key -> new ArrayList<>()).add(instance);
+      }
+    }
+    return groups;
+  }
+
+  public void evict(String serviceId) {
+    views.remove(serviceId);
+  }
+
+  private InstanceView getView(String serviceId) {
+    InstanceView view = views.get(serviceId);
+    if (view == null || view.isExpired(configProps.getInstanceCacheTtl())) {
+      view = new InstanceView(discoveryClient.getInstances(serviceId));
+      if (view.instances.isEmpty()) {
+        views.remove(serviceId);
+        return view;
+      }
+      views.put(serviceId, view);
+      log.debug("op=instanceCache, status=OK, serviceId={}, instances={}", serviceId, view.instances.size());
+    }
+    return view;
+  }
+
+  private static final class InstanceView {
+
+    private final List<ServiceInstance> instances;
+    private final Map<String, ServiceInstance> byIpAddress = new HashMap<>();
+    private final Map<String, ServiceInstance> byInstanceId = new HashMap<>();
+    private final long loadedAt = System.nanoTime();
+
+    private InstanceView(List<ServiceInstance> instances) {
+      this.instances = instances == null ? Collections.emptyList() : Collections.unmodifiableList(instances);
+      for (ServiceInstance instance : this.instances) {
+        if (instance instanceof EurekaServiceInstance) {
+          byIpAddress.putIfAbsent(((EurekaServiceInstance) instance).getInstanceInfo().getIPAddr(), instance);
+          byInstanceId.put(((EurekaServiceInstance) instance).getInstanceInfo().getInstanceId(), instance);
+        } else {
+          byIpAddress.putIfAbsent(instance.getHost(), instance);
+        }
+      }
+    }
+
+    private boolean isExpired(long ttl) {
+      return System.nanoTime() - loadedAt > TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+  }
+
+}
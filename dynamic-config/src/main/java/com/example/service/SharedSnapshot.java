@@ -0,0 +1,273 @@
+package com.example.service;
+
+import com.example.config.ConfigProps;
+import com.example.editor.ValueConverters;
+import com.netflix.appinfo.ApplicationInfoManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Override set shared by the JVMs of a service on one host through a memory mapped file. The process that receives
+ * an update writes the whole set, the others poll the sequence number and apply what changed, so an update needs one
+ * HTTP call per host instead of one per process.
+ *
+ * <p>Layout: {@code magic, layout version, sequence, length, crc32, updatedAt} followed by {@code length} bytes of
+ * {@code key, value} records. Writers hold a file lock and make the sequence odd while the records are written, the
+ * way a seqlock does; readers retry while it is odd or changes under them. The checksum also rejects a copy that
+ * raced with a writer on memory models that reorder the plain writes to the mapping.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamic-config.sharedSnapshotPath")
+public class SharedSnapshot implements SmartInitializingSingleton {
+
+  public static final String METADATA_KEY = "dynamic-config.sharedSnapshot";
+
+  static final int MAGIC = 0x44434653;
+  static final int LAYOUT_VERSION = 1;
+
+  private static final int SEQUENCE_OFFSET = 8;
+  private static final int LENGTH_OFFSET = 16;
+  private static final int CRC_OFFSET = 20;
+  private static final int UPDATED_AT_OFFSET = 24;
+  private static final int HEADER_SIZE = 32;
+  private static final int MAX_READ_ATTEMPTS = 16;
+
+  @Autowired
+  private ConfigProps configProps;
+
+  @Autowired
+  private DynamicConfigService configService;
+
+  @Autowired(required = false)
+  private ApplicationInfoManager applicationInfoManager;
+
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private ScheduledExecutorService pollScheduler;
+  private long lastSequence;
+
+  @PostConstruct
+  public void init() throws IOException {
+    Path file = Paths.get(configProps.getSharedSnapshotPath());
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    FileLock lock = channel.lock();
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+          Math.max(channel.size(), HEADER_SIZE + (long) configProps.getSharedSnapshotSize()));
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != LAYOUT_VERSION) {
+        buffer.putInt(0, MAGIC).putInt(4, LAYOUT_VERSION).putLong(SEQUENCE_OFFSET, 0).putInt(LENGTH_OFFSET, 0);
+        buffer.putInt(CRC_OFFSET, (int) new CRC32().getValue());
+      }
+    } finally {
+      lock.release();
+    }
+    log.info("op=sharedSnapshotOpen, status=OK, path={}, sequence={}", file, buffer.getLong(SEQUENCE_OFFSET));
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    //the overrides are applied once all beans exist, and before Eureka registration picks up the metadata
+    poll();
+    if (applicationInfoManager != null) {
+      //lets the orchestrator send one update per host and snapshot file
+      applicationInfoManager.registerAppMetadata(
+          Collections.singletonMap(METADATA_KEY, Paths.get(configProps.getSharedSnapshotPath()).toString()));
+    }
+    pollScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("dynamic-config-shared-"));
+    pollScheduler.scheduleWithFixedDelay(this::poll, configProps.getSharedSnapshotPollInterval(),
+        configProps.getSharedSnapshotPollInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (pollScheduler != null) {
+      pollScheduler.shutdownNow();
+    }
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException ex) {
+      log.warn("op=sharedSnapshotClose, status=KO, error={}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Merges the props, already applied by this process, into the shared set.
+   */
+  public synchronized void publish(Map<String, String> props) {
+    FileLock lock = null;
+    try {
+      lock = channel.lock();
+      long sequence = buffer.getLong(SEQUENCE_OFFSET);
+      if ((sequence & 1) != 0) {
+        //a writer died half way, its records fail the checksum and are replaced
+        sequence++;
+      }
+      Map<String, String> overrides = decode(copyRecords());
+      overrides.putAll(props);
+      byte[] records = encode(overrides);
+      if (records.length > buffer.capacity() - HEADER_SIZE) {
+        log.error("op=sharedSnapshotPublish, status=KO, desc=Overrides of {} bytes exceed sharedSnapshotSize",
+            records.length);
+        return;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(records, 0, records.length);
+      buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+      ByteBuffer target = buffer.duplicate();
+      target.position(HEADER_SIZE);
+      target.put(records);
+      buffer.putInt(LENGTH_OFFSET, records.length).putInt(CRC_OFFSET, (int) crc.getValue())
+          .putLong(UPDATED_AT_OFFSET, System.currentTimeMillis());
+      buffer.putLong(SEQUENCE_OFFSET, sequence + 2);
+      lastSequence = sequence + 2;
+      log.info("op=sharedSnapshotPublish, status=OK, sequence={}, keys={}", lastSequence, props.keySet());
+    } catch (IOException ex) {
+      log.error("op=sharedSnapshotPublish, status=KO, error={}", ex.getMessage());
+    } finally {
+      release(lock);
+    }
+  }
+
+  private static void release(FileLock lock) {
+    try {
+      if (lock != null) {
+        lock.release();
+      }
+    } catch (IOException ex) {
+      log.warn("op=sharedSnapshotUnlock, status=KO, error={}", ex.getMessage());
+    }
+  }
+
+  synchronized void poll() {
+    long sequence = buffer.getLong(SEQUENCE_OFFSET);
+    if (sequence == lastSequence) {
+      return;
+    }
+    Map.Entry<Long, Map<String, String>> snapshot = read();
+    if (snapshot == null) {
+      return;
+    }
+    Map<String, String> overrides = snapshot.getValue();
+    //only keys whose value differs here are applied, the others would just add revisions
+    Map<String, String> changes = new LinkedHashMap<>();
+    Map<String, Object> current = configService.getConfigValues(overrides.keySet());
+    overrides.forEach((key, value) -> {
+      if (!Objects.equals(ValueConverters.format(current.get(key)), value)) {
+        changes.put(key, value);
+      }
+    });
+    if (!changes.isEmpty()) {
+      Map<String, String> applied = configService.applyOverrides(changes, "sharedSnapshot");
+      //keys this version does not know are skipped, a known key that failed is tried again
+      Set<String> failed = configService.getKnownKeys(changes.keySet());
+      failed.removeAll(applied.keySet());
+      if (!failed.isEmpty()) {
+        //the sequence is left as is, so the next poll tries the snapshot again
+        log.warn("op=sharedSnapshotApply, status=KO, sequence={}, failed={}", snapshot.getKey(), failed);
+        return;
+      }
+      log.info("op=sharedSnapshotApply, status=OK, sequence={}, keys={}", snapshot.getKey(), changes.keySet());
+    }
+    lastSequence = snapshot.getKey();
+  }
+
+  private Map.Entry<Long, Map<String, String>> read() {
+    for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+      long sequence = buffer.getLong(SEQUENCE_OFFSET);
+      if ((sequence & 1) == 0) {
+        byte[] records = copyRecords();
+        if (records != null && buffer.getLong(SEQUENCE_OFFSET) == sequence) {
+          return new AbstractMap.SimpleImmutableEntry<>(sequence, decode(records));
+        }
+      }
+      Thread.yield();
+    }
+    log.warn("op=sharedSnapshotRead, status=KO, desc=Snapshot kept changing, retrying on the next poll");
+    return null;
+  }
+
+  private byte[] copyRecords() {
+    int length = buffer.getInt(LENGTH_OFFSET);
+    int checksum = buffer.getInt(CRC_OFFSET);
+    if (length < 0 || length > buffer.capacity() - HEADER_SIZE) {
+      return null;
+    }
+    byte[] records = new byte[length];
+    ByteBuffer source = buffer.duplicate();
+    source.position(HEADER_SIZE);
+    source.get(records);
+    CRC32 crc = new CRC32();
+    crc.update(records, 0, length);
+    return (int) crc.getValue() == checksum ? records : null;
+  }
+
+  private static Map<String, String> decode(byte[] records) {
+    Map<String, String> overrides = new TreeMap<>();
+    if (records == null) {
+      return overrides;
+    }
+    ByteBuffer source = ByteBuffer.wrap(records);
+    while (source.hasRemaining()) {
+      String key = readString(source);
+      overrides.put(key, readString(source));
+    }
+    return overrides;
+  }
+
+  private static byte[] encode(Map<String, String> overrides) {
+    List<byte[]> strings = new ArrayList<>();
+    int length = 0;
+    for (Map.Entry<String, String> override : overrides.entrySet()) {
+      strings.add(override.getKey().getBytes(StandardCharsets.UTF_8));
+      strings.add(override.getValue().getBytes(StandardCharsets.UTF_8));
+      length += 8 + strings.get(strings.size() - 2).length + strings.get(strings.size() - 1).length;
+    }
+    ByteBuffer records = ByteBuffer.allocate(length);
+    strings.forEach(bytes -> records.putInt(bytes.length).put(bytes));
+    return records.array();
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,325 @@
+package com.example.aspect;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import com.example.service.ConfigSnapshotHolder;
+import com.example.service.DynamicConfigMetrics;
+import com.example.service.DynamicConfigService;
+import com.example.service.FlagRule;
+import com.example.service.FlagRuleHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DynamicConfigAspectTest {
+
+  @Mock
+  private ConfigProps configProps;
+
+  private MockHttpServletRequest request;
+  private FeatureConfig featureConfig;
+  private FeatureConfig target;
+  private DynamicConfigAspect aspect;
+  private ConfigSnapshotHolder snapshotHolder;
+  private FlagRuleHolder flagRuleHolder;
+  private DynamicConfigMetrics metrics;
+  private SimpleMeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() {
+    aspect = new DynamicConfigAspect();
+    snapshotHolder = new ConfigSnapshotHolder();
+    ReflectionTestUtils.setField(aspect, "configProps", configProps);
+    ReflectionTestUtils.setField(aspect, "snapshotHolder", snapshotHolder);
+    flagRuleHolder = new FlagRuleHolder();
+    ReflectionTestUtils.setField(aspect, "flagRuleHolder", flagRuleHolder);
+    metrics = new DynamicConfigMetrics();
+    meterRegistry = new SimpleMeterRegistry();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
+    ReflectionTestUtils.setField(aspect, "metrics", metrics);
+    when(configProps.isRequestScopeEnabled()).thenReturn(true);
+    target = new FeatureConfig();
+    AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+    proxyFactory.setProxyTargetClass(true);
+    proxyFactory.addAspect(aspect);
+    featureConfig = proxyFactory.getProxy();
+    ApplicationContext context = mock(ApplicationContext.class);
+    when(context.getBeansWithAnnotation(EnableDynamicConfig.class))
+        .thenReturn(Collections.singletonMap("featureConfig", featureConfig));
+    aspect.onContextRefreshed(new ContextRefreshedEvent(context));
+    request = spy(new MockHttpServletRequest());
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+  }
+
+  @After
+  public void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  public void testGetterWithoutHeader() {
+    assertThat(featureConfig.isFeatureEnabled()).isFalse();
+    assertThat(featureConfig.getThreshold()).isEqualTo(BigDecimal.ONE);
+  }
+
+  @Test
+  public void testGetterWithHeader() {
+    request.addHeader("featureenabled", "true");
+    request.addHeader("threshold", "2.5");
+    request.addHeader("retrycount", "7");
+    assertThat(featureConfig.isFeatureEnabled()).isTrue();
+    assertThat(featureConfig.getThreshold()).isEqualTo(new BigDecimal("2.5"));
+    assertThat(featureConfig.getRetryCount()).isEqualTo(7);
+  }
+
+  @Test
+  public void testGetterWithInvalidHeader() {
+    request.addHeader("retrycount", "seven");
+    assertThat(featureConfig.getRetryCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testGetterWithRequestScopeDisabled() {
+    when(configProps.isRequestScopeEnabled()).thenReturn(false);
+    request.addHeader("featureenabled", "true");
+    assertThat(featureConfig.isFeatureEnabled()).isFalse();
+  }
+
+  @Test
+  public void testGetterWithoutRequest() {
+    RequestContextHolder.resetRequestAttributes();
+    assertThat(featureConfig.getRetryCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testHeadersAreParsedOncePerRequest() {
+    request.addHeader("featureenabled", "true");
+    for (int i = 0; i < 10; i++) {
+      assertThat(featureConfig.isFeatureEnabled()).isTrue();
+      assertThat(featureConfig.getRetryCount()).isEqualTo(3);
+    }
+    verify(request, times(1)).getHeaderNames();
+  }
+
+  @Test
+  public void testOverridesArePropagatedToDecoratedTasks() throws Exception {
+    request.addHeader("retrycount", "9");
+    RequestOverridesTaskDecorator taskDecorator = new RequestOverridesTaskDecorator();
+    ReflectionTestUtils.setField(taskDecorator, "dynamicConfigAspect", aspect);
+    AtomicInteger asyncValue = new AtomicInteger();
+    AtomicInteger plainAsyncValue = new AtomicInteger();
+    Thread decorated = new Thread(taskDecorator.decorate(() -> asyncValue.set(featureConfig.getRetryCount())));
+    Thread plain = new Thread(() -> plainAsyncValue.set(featureConfig.getRetryCount()));
+    decorated.start();
+    plain.start();
+    decorated.join();
+    plain.join();
+    assertThat(asyncValue.get()).isEqualTo(9);
+    assertThat(plainAsyncValue.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testGetterRunsOnPublishedValues() {
+    Map<String, String> props = new HashMap<>();
+    props.put("FeatureConfig.featureEnabled", "true");
+    props.put("FeatureConfig.retryCount", "5");
+    publish(props);
+    assertThat(featureConfig.isFeatureEnabled()).isTrue();
+    assertThat(featureConfig.getRetryCount()).isEqualTo(5);
+    //a getter deriving its value from the field is still called
+    assertThat(featureConfig.getMaxAttempts()).isEqualTo(6);
+    MockHttpServletRequest overrideRequest = new MockHttpServletRequest();
+    overrideRequest.addHeader("retrycount", "8");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(overrideRequest));
+    assertThat(featureConfig.getRetryCount()).isEqualTo(8);
+  }
+
+  @Test
+  public void testRelatedKeysAreSeenAllOldOrAllNew() throws Exception {
+    DynamicConfigService service = newService();
+    AtomicBoolean done = new AtomicBoolean();
+    List<String> mixed = new CopyOnWriteArrayList<>();
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        int retryCount = featureConfig.getRetryCount();
+        BigDecimal threshold = featureConfig.getThreshold();
+        if (threshold.intValue() != retryCount && retryCount != 3) {
+          mixed.add(retryCount + "/" + threshold);
+        }
+      }
+    });
+    reader.start();
+    for (int i = 10; i < 2000; i++) {
+      Map<String, String> props = new HashMap<>();
+      props.put("FeatureConfig.retryCount", String.valueOf(i));
+      props.put("FeatureConfig.threshold", String.valueOf(i));
+      service.updateConfigs(props);
+    }
+    done.set(true);
+    reader.join();
+    assertThat(mixed).isEmpty();
+    assertThat(featureConfig.getThreshold()).isEqualTo(new BigDecimal("1999"));
+  }
+
+  @Test
+  public void testSampledGetterCallsAreMetered() {
+    when(configProps.getMetricsSampleRate()).thenReturn(1d);
+    metrics.init();
+    request.addHeader("retrycount", "7");
+    for (int i = 0; i < 3; i++) {
+      featureConfig.getRetryCount();
+      featureConfig.isFeatureEnabled();
+    }
+    assertThat(meterRegistry.get("dynamic.config.getter.calls")
+        .tags("property", "FeatureConfig.retryCount", "source", "header").counter().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("dynamic.config.getter.calls")
+        .tags("property", "FeatureConfig.featureEnabled", "source", "default").counter().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("dynamic.config.getter.overhead")
+        .tag("property", "FeatureConfig.retryCount").timer().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("dynamic.config.getter.override.ratio").gauge().value()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void testFlagRuleMatchesAttribute() {
+    FlagRule rule = new FlagRule();
+    rule.setAttribute("region");
+    rule.setIn(Arrays.asList("EU", "UK"));
+    rule.setValue("true");
+    publishRules(Collections.singletonMap("FeatureConfig.featureEnabled", Collections.singletonList(rule)));
+    request.addHeader("Region", "EU");
+    assertThat(featureConfig.isFeatureEnabled()).isTrue();
+    MockHttpServletRequest otherRequest = new MockHttpServletRequest();
+    otherRequest.addHeader("region", "US");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(otherRequest));
+    assertThat(featureConfig.isFeatureEnabled()).isFalse();
+    RequestContextHolder.resetRequestAttributes();
+    assertThat(featureConfig.isFeatureEnabled()).isFalse();
+  }
+
+  @Test
+  public void testFlagRulePercentageIsSticky() {
+    FlagRule rule = new FlagRule();
+    rule.setHashBy("userId");
+    rule.setPercentage(20d);
+    rule.setValue("true");
+    publishRules(Collections.singletonMap("FeatureConfig.featureEnabled", Collections.singletonList(rule)));
+    Set<String> enabledUsers = new HashSet<>();
+    for (int i = 0; i < 10000; i++) {
+      if (isEnabledFor("user-" + i)) {
+        enabledUsers.add("user-" + i);
+      }
+    }
+    assertThat(enabledUsers.size()).isBetween(1800, 2200);
+    enabledUsers.forEach(user -> assertThat(isEnabledFor(user)).isTrue());
+
+    rule.setPercentage(50d);
+    publishRules(Collections.singletonMap("FeatureConfig.featureEnabled", Collections.singletonList(rule)));
+    enabledUsers.forEach(user -> assertThat(isEnabledFor(user)).isTrue());
+  }
+
+  @Test
+  public void testHeaderOverrideWinsOverFlagRule() {
+    FlagRule rule = new FlagRule();
+    rule.setHashBy("userId");
+    rule.setPercentage(100d);
+    rule.setValue("11");
+    publishRules(Collections.singletonMap("FeatureConfig.retryCount", Collections.singletonList(rule)));
+    request.addHeader("userId", "user-1");
+    assertThat(featureConfig.getRetryCount()).isEqualTo(11);
+    MockHttpServletRequest overrideRequest = new MockHttpServletRequest();
+    overrideRequest.addHeader("userId", "user-1");
+    overrideRequest.addHeader("retrycount", "4");
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(overrideRequest));
+    assertThat(featureConfig.getRetryCount()).isEqualTo(4);
+  }
+
+  private boolean isEnabledFor(String userId) {
+    MockHttpServletRequest userRequest = new MockHttpServletRequest();
+    userRequest.addHeader("userId", userId);
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(userRequest));
+    return featureConfig.isFeatureEnabled();
+  }
+
+  private void publishRules(Map<String, List<FlagRule>> rules) {
+    DynamicConfigService service = newService();
+    service.updateFlagRules(rules);
+  }
+
+  private void publish(Map<String, String> props) {
+    newService().updateConfigs(props);
+  }
+
+  private DynamicConfigService newService() {
+    ConfigProps basePackage = new ConfigProps();
+    basePackage.setBasePackage("com.example.aspect");
+    ApplicationContext context = mock(ApplicationContext.class);
+    when(context.getBeanDefinitionNames()).thenReturn(new String[0]);
+    when(context.getBeansWithAnnotation(Configuration.class)).thenReturn(Collections.singletonMap("featureConfig", target));
+    when(context.getBean("featureConfig")).thenReturn(target);
+    DynamicConfigService service = new DynamicConfigService();
+    ReflectionTestUtils.setField(service, "configProps", basePackage);
+    ReflectionTestUtils.setField(service, "applicationContext", context);
+    ReflectionTestUtils.setField(service, "snapshotHolder", snapshotHolder);
+    ReflectionTestUtils.setField(service, "flagRuleHolder", flagRuleHolder);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    return service;
+  }
+
+  @EnableDynamicConfig
+  public static class FeatureConfig {
+
+    private boolean featureEnabled;
+    private int retryCount = 3;
+    private BigDecimal threshold = BigDecimal.ONE;
+
+    public boolean isFeatureEnabled() {
+      return featureEnabled;
+    }
+
+    public int getRetryCount() {
+      return retryCount;
+    }
+
+    public int getMaxAttempts() {
+      return retryCount + 1;
+    }
+
+    public BigDecimal getThreshold() {
+      return threshold;
+    }
+  }
+
+}
@@ -1,14 +1,26 @@
 package com.example.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.example.config.ConfigProps;
+import com.example.service.ConfigChange;
+import com.example.service.ConfigChangeFeed;
 import com.example.service.DynamicConfigService;
+import com.example.service.InstanceResponse;
+import com.example.service.LogLevelService;
+import com.example.service.ServiceInstanceCache;
+import com.example.service.SharedSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netflix.appinfo.InstanceInfo;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,17 +32,26 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -46,6 +67,12 @@ public class DynamicConfigControllerTest {
   @Mock
   private ConfigProps configProps;
 
+  @Mock
+  private ConfigChangeFeed changeFeed;
+
+  @Mock
+  private LogLevelService logLevelService;
+
   @InjectMocks
   private DynamicConfigController controller;
 
@@ -66,6 +93,10 @@ public class DynamicConfigControllerTest {
     instances = new ArrayList<>();
     instances.add(new EurekaServiceInstance(instanceInfo));
     when(configProps.getServiceIdAndContextPath()).thenReturn(serviceIdAndContextPath);
+    ServiceInstanceCache instanceCache = new ServiceInstanceCache();
+    ReflectionTestUtils.setField(instanceCache, "configProps", configProps);
+    ReflectionTestUtils.setField(instanceCache, "discoveryClient", discoveryClient);
+    ReflectionTestUtils.setField(controller, "instanceCache", instanceCache);
     RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
   }
 
@@ -73,17 +104,17 @@ public class DynamicConfigControllerTest {
   public void testGetConfigForMasterNodeOrderService() {
     when(instanceInfo.getIPAddr()).thenReturn("157.49.249.116");
     when(discoveryClient.getInstances(any())).thenReturn(instances);
-    when(configService.executeOnInstances("order-api/config/order-service-v1?includeYml=false", HttpMethod.GET, null, instances, "getConfig")).thenReturn(new TreeMap<>());
-    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, false);
+    when(configService.executeOnInstances("order-api/config/order-service-v1?includeYml=false", HttpMethod.GET, null, new HttpHeaders(), instances, "getConfig")).thenReturn(new TreeMap<>());
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, null, null, false);
     assertThat(config).isNotNull();
-    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1?includeYml=false", HttpMethod.GET, null, instances, "getConfig");
+    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1?includeYml=false", HttpMethod.GET, null, new HttpHeaders(), instances, "getConfig");
   }
 
   @Test
   public void testGetConfigForMasterNodeBestCoupon() {
     when(instanceInfo.getIPAddr()).thenReturn("157.49.249.116");
     when(discoveryClient.getInstances(any())).thenReturn(instances);
-    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "best-coupon-service-v1", false, false);
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "best-coupon-service-v1", false, null, null, false);
     assertThat(config).isNotNull();
   }
 
@@ -91,37 +122,366 @@ public class DynamicConfigControllerTest {
   public void testGetConfigForMasterNodeForOtherThanOrderAndBestCouponService() {
     when(instanceInfo.getIPAddr()).thenReturn("157.49.249.116");
     when(discoveryClient.getInstances(any())).thenReturn(instances);
-    when(configService.executeOnInstances("bag-rs/config/bag-service-v1?includeYml=false", HttpMethod.GET, null, instances,"getConfig")).thenReturn(new TreeMap<>());
-    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "bag-service-v1", false, false);
+    when(configService.executeOnInstances("bag-rs/config/bag-service-v1?includeYml=false", HttpMethod.GET, null, new HttpHeaders(), instances, "getConfig")).thenReturn(new TreeMap<>());
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "bag-service-v1", false, null, null, false);
     assertThat(config).isNotNull();
-    verify(configService, times(1)).executeOnInstances("bag-rs/config/bag-service-v1?includeYml=false", HttpMethod.GET, null, instances, "getConfig");
+    verify(configService, times(1)).executeOnInstances("bag-rs/config/bag-service-v1?includeYml=false", HttpMethod.GET, null, new HttpHeaders(), instances, "getConfig");
+  }
+
+  @Test
+  public void testStreamConfigWritesOneLinePerInstance() throws Exception {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    InstanceResponse first = new InstanceResponse();
+    first.setInstanceId("instance-1");
+    first.setIpAddress("10.0.0.1");
+    first.setStatus(InstanceResponse.Status.OK);
+    first.setBody(Collections.singletonMap("ConfigProps.readTimeout", 3000));
+    InstanceResponse second = new InstanceResponse();
+    second.setInstanceId("instance-2");
+    second.setIpAddress("10.0.0.2");
+    second.setStatus(InstanceResponse.Status.OK);
+    second.setBody(Collections.singletonMap("ConfigProps.readTimeout", 2000));
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    doAnswer(invocation -> {
+      Consumer<InstanceResponse> listener = invocation.getArgument(6);
+      listener.accept(first);
+      listener.accept(second);
+      return null;
+    }).when(configService).executeOnInstances(eq("order-api/config/order-service-v1?includeYml=false"),
+        eq(HttpMethod.GET), any(), eq(new HttpHeaders()), eq(instances), eq("streamConfig"), any(Consumer.class));
+
+    ResponseEntity<StreamingResponseBody> response =
+        controller.streamConfig(request, "order-service-v1", false, null, null);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    response.getBody().writeTo(output);
+
+    String[] lines = output.toString("UTF-8").split("\n");
+    assertThat(lines).hasSize(2);
+    assertThat(lines[0]).contains("\"instanceId\":\"instance-1\"", "\"ipAddress\":\"10.0.0.1\"", "3000");
+    assertThat(lines[1]).contains("\"instanceId\":\"instance-2\"", "\"ipAddress\":\"10.0.0.2\"", "2000");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testStreamConfigForwardsSinceWithIfNoneMatch() throws Exception {
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setIfNoneMatch("\"abc-1\"");
+
+    ResponseEntity<StreamingResponseBody> response =
+        controller.streamConfig(request, "order-service-v1", false, 5L, "\"abc-1\"");
+    response.getBody().writeTo(new ByteArrayOutputStream());
+
+    verify(configService, times(1)).executeOnInstances(eq("order-api/config/order-service-v1?includeYml=false&since=5"),
+        eq(HttpMethod.GET), any(), eq(headers), eq(instances), eq("streamConfig"), any(Consumer.class));
+  }
+
+  @Test
+  public void testDiffConfigForSlaveNode() {
+    when(configService.getConfigDigest()).thenReturn(new TreeMap<>());
+    controller.diffConfig(request, "order-service-v1", null, true);
+    verify(configService, times(1)).getConfigDigest();
+    List<String> keys = Collections.singletonList("ConfigProps.readTimeout");
+    controller.diffConfig(request, "order-service-v1", keys, true);
+    verify(configService, times(1)).getConfigValues(keys);
+  }
+
+  @Test
+  public void testDiffConfigForMasterNode() {
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(configService.diffConfig("order-api/config/order-service-v1/diff", instances, "diffConfig"))
+        .thenReturn(Collections.singletonMap("inSync", true));
+    ResponseEntity<Map<String, Object>> diff = controller.diffConfig(request, "order-service-v1", null, false);
+    assertThat(diff.getBody()).containsEntry("inSync", true);
   }
 
   @Test
   public void testGetConfigForSlaveNode() {
-    when(configService.getConfig( false)).thenReturn(new TreeMap<>());
-    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, true);
+    when(configService.getConfigETag(false, null)).thenReturn("\"abc-1\"");
+    when(configService.getConfig( false, null)).thenReturn(new TreeMap<>());
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, null, null, true);
     assertThat(config).isNotNull();
-    verify(configService, times(1)).getConfig( false);
+    assertThat(config.getHeaders().getETag()).isEqualTo("\"abc-1\"");
+    verify(configService, times(1)).getConfig( false, null);
+  }
+
+  @Test
+  public void testGetConfigForSlaveNodeNotModified() {
+    when(configService.getConfigETag(false, null)).thenReturn("\"abc-1\"");
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, null, "\"abc-1\"", true);
+    assertThat(config.getStatusCodeValue()).isEqualTo(304);
+    verify(configService, never()).getConfig(false, null);
+  }
+
+  @Test
+  public void testGetConfigForMasterNodeNotModified() {
+    InstanceResponse instanceResponse = new InstanceResponse();
+    instanceResponse.setStatus(InstanceResponse.Status.OK);
+    instanceResponse.setEtag("\"abc-1\"");
+    when(instanceInfo.getIPAddr()).thenReturn("157.49.249.116");
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(configService.executeOnInstances(eq("order-api/config/order-service-v1?includeYml=false"), eq(HttpMethod.GET),
+        any(), any(HttpHeaders.class), eq(instances), eq("getConfig")))
+        .thenReturn(Collections.singletonMap("instance-1", instanceResponse));
+    ResponseEntity<Map<String, Object>> config = controller.getConfig(request, "order-service-v1", false, null, null, false);
+    assertThat(config.getStatusCodeValue()).isEqualTo(200);
+    String etag = config.getHeaders().getETag();
+    assertThat(etag).isNotNull();
+    config = controller.getConfig(request, "order-service-v1", false, null, etag, false);
+    assertThat(config.getStatusCodeValue()).isEqualTo(304);
+  }
+
+  @Test
+  public void testGetConfigForMasterNodeForwardsIfNoneMatch() {
+    InstanceResponse notModified = new InstanceResponse();
+    notModified.setStatus(InstanceResponse.Status.OK);
+    notModified.setHttpStatus(304);
+    notModified.setEtag("\"abc-1\"");
+    HttpHeaders headers = new HttpHeaders();
+    headers.setIfNoneMatch("\"abc-1\"");
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(configService.executeOnInstances("order-api/config/order-service-v1?includeYml=false&since=1", HttpMethod.GET,
+        null, headers, instances, "getConfig")).thenReturn(Collections.singletonMap("instance-1", notModified));
+    ResponseEntity<Map<String, Object>> config =
+        controller.getConfig(request, "order-service-v1", false, 1L, "\"abc-1\"", false);
+    assertThat(config.getStatusCodeValue()).isEqualTo(304);
+    assertThat(config.getHeaders().getETag()).isEqualTo("\"abc-1\"");
+  }
+
+  @Test
+  public void testGetConfigForSlaveNodeIgnoresSinceFromAnotherInstance() {
+    when(configService.isIssuedHere("\"xyz-4\"")).thenReturn(false);
+    when(configService.getConfigETag(false, null)).thenReturn("\"abc-1\"");
+    when(configService.getConfig(false, null)).thenReturn(new TreeMap<>());
+    controller.getConfig(request, "order-service-v1", false, 4L, "\"xyz-4\"", true);
+    verify(configService, never()).getConfig(false, 4L);
   }
 
   @Test
   public void testUpdateConfigForMasterNode() {
     when(discoveryClient.getInstances(any())).thenReturn(instances);
     when(configService.executeOnInstances("order-api/config/order-service-v1", HttpMethod.PUT, "abc:xyz", instances, "updateConfig")).thenReturn(new TreeMap<>());
-    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", false);
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, null, null, null, false);
     assertThat(response).isNotNull();
     assertThat(response.getStatusCodeValue()).isEqualTo(201);
     verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1", HttpMethod.PUT, "abc:xyz", instances, "updateConfig");
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testUpdateConfigOncePerSharedSnapshot() {
+    InstanceInfo sameHost = mock(InstanceInfo.class);
+    Map<String, String> metadata = Collections.singletonMap(SharedSnapshot.METADATA_KEY, "/dev/shm/orders");
+    when(instanceInfo.getInstanceId()).thenReturn("instance-1");
+    when(instanceInfo.getHostName()).thenReturn("host-1");
+    when(instanceInfo.getMetadata()).thenReturn(metadata);
+    when(sameHost.getInstanceId()).thenReturn("instance-2");
+    when(sameHost.getHostName()).thenReturn("host-1");
+    when(sameHost.getMetadata()).thenReturn(metadata);
+    instances.add(new EurekaServiceInstance(sameHost));
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    InstanceResponse failed = new InstanceResponse();
+    failed.setStatus(InstanceResponse.Status.FAILED);
+    when(configService.executeOnInstances(any(), any(), any(), any(), any()))
+        .thenReturn(Collections.singletonMap("instance-1", failed), new TreeMap<>());
+    controller.updateConfig(request, "abc:xyz", "order-service-v1", null, null, null, null, null, false);
+    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1?shared=true", HttpMethod.PUT,
+        "abc:xyz", Collections.singletonList(instances.get(0)), "updateConfig");
+    //the representative failed, so the other process of the host is called directly
+    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1", HttpMethod.PUT,
+        "abc:xyz", Collections.singletonList(instances.get(1)), "updateConfig");
+  }
+
+  @Test
+  public void testUpdateConfigForMasterNodeInStreamOnlyMode() {
+    ConfigChange change = new ConfigChange(7L, "order-service-v1", Collections.singletonMap("abc", "xyz"), 0L);
+    when(configProps.isStreamOnly()).thenReturn(true);
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(changeFeed.publish("order-service-v1", Collections.singletonMap("abc", "xyz"))).thenReturn(change);
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, null, null, null, false);
+    assertThat(response.getStatusCodeValue()).isEqualTo(202);
+    assertThat(response.getBody()).isEqualTo(change);
+    verify(configService, times(1)).executeOnInstances(any(), any(), any(), any(), any());
+    verify(configService, never()).executeOnInstances(any(), any(), any(), any(), eq("updateConfig"));
+  }
+
+  @Test
+  public void testUpdateConfigRejectedByDryRunIsNotPublished() {
+    InstanceResponse rejected = new InstanceResponse();
+    rejected.setStatus(InstanceResponse.Status.FAILED);
+    rejected.setHttpStatus(400);
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(configService.executeOnInstances("order-api/config/order-service-v1?dryRun=true", HttpMethod.PUT,
+        "abc:xyz", instances, "validateConfig")).thenReturn(Collections.singletonMap("instance-1", rejected));
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, null, null, null, false);
+    assertThat(response.getStatusCodeValue()).isEqualTo(400);
+    assertThat(response.getBody()).isEqualTo(Collections.singletonMap("instance-1", rejected));
+    verify(changeFeed, never()).publish(any(), any());
+    verify(configService, never()).executeOnInstances(any(), any(), any(), any(), eq("updateConfig"));
+  }
+
+  @Test
+  public void testUpdateConfigBatchRejectedByDryRunIsNotPublished() {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    InstanceResponse rejected = new InstanceResponse();
+    rejected.setStatus(InstanceResponse.Status.FAILED);
+    rejected.setHttpStatus(400);
+    when(discoveryClient.getInstances("order-service-v1")).thenReturn(instances);
+    when(configService.executeOnInstances("order-api/config/order-service-v1?dryRun=true", HttpMethod.PUT,
+        "abc:xyz", instances, "validateConfig")).thenReturn(Collections.singletonMap("instance-1", rejected));
+    ResponseEntity response = controller.updateConfigBatch(request, "{\"order-service-v1\":{\"abc\":\"xyz\"}}");
+    assertThat(response.getStatusCodeValue()).isEqualTo(400);
+    verify(changeFeed, never()).publish(any(), any());
+  }
+
+  @Test
+  public void testUpdateConfigDryRunForSlaveNode() {
+    doThrow(new RuntimeException("Oops! Failed to update config.")).when(configService)
+        .validateConfigs(Collections.singletonMap("abc", "xyz"));
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, null, null, Boolean.TRUE, true);
+    assertThat(response.getStatusCodeValue()).isEqualTo(400);
+    verify(configService, never()).updateConfigs(any());
+  }
+
+  @Test
+  public void testUpdateConfigForZoneSkipsChangeFeed() {
+    InstanceInfo otherInstanceInfo = mock(InstanceInfo.class);
+    EurekaServiceInstance inZone = mock(EurekaServiceInstance.class);
+    EurekaServiceInstance otherZone = mock(EurekaServiceInstance.class);
+    when(inZone.getInstanceInfo()).thenReturn(instanceInfo);
+    when(inZone.getMetadata()).thenReturn(Collections.singletonMap("zone", "us-east-1a"));
+    when(otherZone.getInstanceInfo()).thenReturn(otherInstanceInfo);
+    when(otherZone.getMetadata()).thenReturn(Collections.singletonMap("zone", "us-east-1b"));
+    when(discoveryClient.getInstances(any())).thenReturn(Arrays.asList(inZone, otherZone));
+    when(configService.executeOnInstances(any(), any(), any(), any(), any())).thenReturn(new TreeMap<>());
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, "us-east-1a", null, null, null, false);
+    assertThat(response.getStatusCodeValue()).isEqualTo(201);
+    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1", HttpMethod.PUT, "abc:xyz",
+        Collections.singletonList(inZone), "updateConfig");
+    verify(changeFeed, never()).publish(any(), any());
+  }
+
+  @Test
+  public void testUpdateConfigForInstanceId() {
+    when(instanceInfo.getInstanceId()).thenReturn("order-service-v1:8080");
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    when(configService.executeOnInstances(any(), any(), any(), any(), any())).thenReturn(new TreeMap<>());
+    controller.updateConfig(request, "abc:xyz","order-service-v1", "order-service-v1:8080", null, null, null, null, false);
+    verify(configService, times(1)).executeOnInstances("order-api/config/order-service-v1", HttpMethod.PUT, "abc:xyz",
+        instances, "updateConfig");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testUpdateConfigBatchSendsOneRequestPerInstance() {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    InstanceInfo bagInstanceInfo = mock(InstanceInfo.class);
+    when(instanceInfo.getInstanceId()).thenReturn("order-1");
+    when(bagInstanceInfo.getInstanceId()).thenReturn("bag-1");
+    List<ServiceInstance> bagInstances = Collections.singletonList(new EurekaServiceInstance(bagInstanceInfo));
+    when(discoveryClient.getInstances("order-service-v1")).thenReturn(instances);
+    when(discoveryClient.getInstances("bag-service-v1")).thenReturn(bagInstances);
+    List<String> requests = new ArrayList<>();
+    doAnswer(invocation -> {
+      Function<InstanceInfo, String> urls = invocation.getArgument(0);
+      Function<InstanceInfo, String> bodies = invocation.getArgument(1);
+      Consumer<InstanceResponse> listener = invocation.getArgument(5);
+      for (ServiceInstance instance : (List<ServiceInstance>) invocation.getArgument(3)) {
+        InstanceInfo info = ((EurekaServiceInstance) instance).getInstanceInfo();
+        requests.add(urls.apply(info) + " " + bodies.apply(info));
+        InstanceResponse response = new InstanceResponse();
+        response.setInstanceId(info.getInstanceId());
+        response.setStatus(info == bagInstanceInfo ? InstanceResponse.Status.FAILED : InstanceResponse.Status.OK);
+        listener.accept(response);
+      }
+      return null;
+    }).when(configService).executeOnInstances(any(Function.class), any(Function.class), eq(HttpMethod.PUT), any(),
+        eq("updateConfigBatch"), any(Consumer.class));
+
+    ResponseEntity response = controller.updateConfigBatch(request,
+        "{\"order-service-v1\":{\"abc\":\"xyz\",\"limit\":5},\"bag-service-v1\":{\"abc\":\"uvw\"}}");
+    assertThat(requests).containsExactly("order-api/config/order-service-v1 abc:xyz\nlimit:5",
+        "bag-rs/config/bag-service-v1 abc:uvw");
+    assertThat(response.getStatusCodeValue()).isEqualTo(207);
+    Map<String, Map<String, InstanceResponse>> body = (Map<String, Map<String, InstanceResponse>>) response.getBody();
+    assertThat(body.get("order-service-v1")).containsOnlyKeys("order-1");
+    assertThat(body.get("bag-service-v1").get("bag-1").isSuccessful()).isFalse();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testUpdateConfigBatchOncePerSharedSnapshot() {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    InstanceInfo sameHost = mock(InstanceInfo.class);
+    Map<String, String> metadata = Collections.singletonMap(SharedSnapshot.METADATA_KEY, "/dev/shm/orders");
+    when(instanceInfo.getInstanceId()).thenReturn("instance-1");
+    when(instanceInfo.getHostName()).thenReturn("host-1");
+    when(instanceInfo.getMetadata()).thenReturn(metadata);
+    when(sameHost.getInstanceId()).thenReturn("instance-2");
+    when(sameHost.getHostName()).thenReturn("host-1");
+    when(sameHost.getMetadata()).thenReturn(metadata);
+    instances.add(new EurekaServiceInstance(sameHost));
+    when(discoveryClient.getInstances("order-service-v1")).thenReturn(instances);
+    List<String> requests = new ArrayList<>();
+    doAnswer(invocation -> {
+      Function<InstanceInfo, String> urls = invocation.getArgument(0);
+      Consumer<InstanceResponse> listener = invocation.getArgument(5);
+      for (ServiceInstance instance : (List<ServiceInstance>) invocation.getArgument(3)) {
+        InstanceInfo info = ((EurekaServiceInstance) instance).getInstanceInfo();
+        requests.add(info.getInstanceId() + " " + urls.apply(info));
+        InstanceResponse response = new InstanceResponse();
+        response.setInstanceId(info.getInstanceId());
+        response.setStatus(info == instanceInfo ? InstanceResponse.Status.FAILED : InstanceResponse.Status.OK);
+        listener.accept(response);
+      }
+      return null;
+    }).when(configService).executeOnInstances(any(Function.class), any(Function.class), eq(HttpMethod.PUT), any(),
+        eq("updateConfigBatch"), any(Consumer.class));
+
+    controller.updateConfigBatch(request, "{\"order-service-v1\":{\"abc\":\"xyz\"}}");
+    //the representative failed, so the other process of the host is called directly
+    assertThat(requests).containsExactly("instance-1 order-api/config/order-service-v1?shared=true",
+        "instance-2 order-api/config/order-service-v1");
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testUpdateConfigBatchRejectsMultiLineValue() {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    controller.updateConfigBatch(request, "{\"order-service-v1\":{\"abc\":\"x\\nlimit:5\"}}");
+  }
+
+  @Test
+  public void testUpdateConfigBatchRejectsNonScalarValues() {
+    ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+    assertThatThrownBy(() -> controller.updateConfigBatch(request, "{\"order-service-v1\":{\"abc\":{\"x\":1}}}"))
+        .hasMessageContaining("Only scalar values");
+    assertThatThrownBy(() -> controller.updateConfigBatch(request, "{\"order-service-v1\":{\"abc\":[1,2]}}"))
+        .hasMessageContaining("Only scalar values");
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testUpdateConfigForUnknownLabel() {
+    when(discoveryClient.getInstances(any())).thenReturn(instances);
+    controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, Collections.singletonList("canary=true"), null, null, false);
+  }
+
   @Test
   public void testUpdateConfigForSlaveNode() {
-    when(configService.updateConfig( "abc", "xyz")).thenReturn(true);
-    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", true);
+    when(configService.updateConfigs(Collections.singletonMap("abc", "xyz"))).thenReturn(true);
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz","order-service-v1", null, null, null, null, null, true);
     assertThat(response).isNotNull();
     assertThat(response.getStatusCodeValue()).isEqualTo(201);
-    verify(configService, times(1)).updateConfig( "abc", "xyz");
+    verify(configService, times(1)).updateConfigs(Collections.singletonMap("abc", "xyz"));
+  }
+
+  @Test
+  public void testUpdateMultipleConfigsForSlaveNode() {
+    Map<String, String> props = new LinkedHashMap<>();
+    props.put("abc", "xyz");
+    props.put("def", "uvw");
+    ResponseEntity response = controller.updateConfig(request, "abc:xyz\n\ndef: uvw\n","order-service-v1", null, null, null, null, null, true);
+    assertThat(response.getStatusCodeValue()).isEqualTo(201);
+    verify(configService, times(1)).updateConfigs(props);
   }
 
   @Test
@@ -129,7 +489,7 @@ public class DynamicConfigControllerTest {
     when(instanceInfo.getIPAddr()).thenReturn("157.49.249.116");
     when(discoveryClient.getInstances(any())).thenReturn(instances);
     when(configService.executeOnInstances("order-api/config/log/order-service-v1", HttpMethod.PUT, "abc:xyz", instances,"updateLog")).thenReturn(new TreeMap<>());
-    ResponseEntity response = controller.updateLog(request, "abc:xyz","order-service-v1", "157.49.249.116", false);
+    ResponseEntity response = controller.updateLog(request, "abc:xyz","order-service-v1", "157.49.249.116", null, false);
     assertThat(response).isNotNull();
     assertThat(response.getStatusCodeValue()).isEqualTo(201);
     verify(configService, times(1)).executeOnInstances("order-api/config/log/order-service-v1", HttpMethod.PUT, "abc:xyz", instances, "updateLog");
@@ -137,11 +497,14 @@ public class DynamicConfigControllerTest {
 
   @Test
   public void testUpdateLogConfigForSlaveNode() {
-    when(configService.updateLog("abc", "xyz")).thenReturn(true);
-    ResponseEntity response = controller.updateLog(request, "abc:xyz","order-service-v1", "157.49.249.116", true);
+    ResponseEntity response = controller.updateLog(request, "abc:DEBUG\ncom.example:WARN","order-service-v1",
+        "157.49.249.116", 60000L, true);
     assertThat(response).isNotNull();
     assertThat(response.getStatusCodeValue()).isEqualTo(201);
-    verify(configService, times(1)).updateLog("abc", "xyz");
+    Map<String, String> logLevels = new LinkedHashMap<>();
+    logLevels.put("abc", "DEBUG");
+    logLevels.put("com.example", "WARN");
+    verify(logLevelService, times(1)).updateLogs(logLevels, 60000L);
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.example.editor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class ValueConvertersTest {
+
+  private List<Integer> retryDelays;
+  private Set<TimeUnit> units;
+  private Map<String, Duration> timeouts;
+  private List<Object> unsupported;
+  private List<String> names;
+  private Map<String, String> labels;
+
+  @Test
+  public void testScalarTypes() {
+    assertThat(ValueConverters.forType(int.class).convert("0x10")).isEqualTo(16);
+    assertThat(ValueConverters.forType(BigDecimal.class).convert("2.50")).isEqualTo(new BigDecimal("2.50"));
+    assertThat(ValueConverters.forType(TimeUnit.class).convert(" SECONDS ")).isEqualTo(TimeUnit.SECONDS);
+    assertThat(ValueConverters.forType(UUID.class).convert("00000000-0000-0000-0000-000000000001"))
+        .isEqualTo(new UUID(0, 1));
+  }
+
+  @Test
+  public void testDurations() {
+    ValueConverter converter = ValueConverters.forType(Duration.class);
+    assertThat(converter.convert("250")).isEqualTo(Duration.ofMillis(250));
+    assertThat(converter.convert("10s")).isEqualTo(Duration.ofSeconds(10));
+    assertThat(converter.convert("PT5M")).isEqualTo(Duration.ofMinutes(5));
+  }
+
+  @Test
+  public void testCollectionsMapsAndArrays() throws Exception {
+    assertThat(ValueConverters.forType(getClass().getDeclaredField("retryDelays").getGenericType())
+        .convert("100, 200,400")).isEqualTo(Arrays.asList(100, 200, 400));
+    assertThat((Set<?>) ValueConverters.forType(getClass().getDeclaredField("units").getGenericType())
+        .convert("SECONDS,MINUTES,SECONDS")).containsExactly(TimeUnit.SECONDS, TimeUnit.MINUTES);
+    Map<?, ?> timeouts = (Map<?, ?>) ValueConverters.forType(getClass().getDeclaredField("timeouts").getGenericType())
+        .convert("read=2s,connect=500");
+    assertThat(timeouts.get("read")).isEqualTo(Duration.ofSeconds(2));
+    assertThat(timeouts.get("connect")).isEqualTo(Duration.ofMillis(500));
+    assertThat((int[]) ValueConverters.forType(int[].class).convert("1,2,3")).containsExactly(1, 2, 3);
+    assertThat((List<?>) ValueConverters.forType(List.class).convert("")).isEmpty();
+  }
+
+  @Test
+  public void testFormatIsConvertedBack() throws Exception {
+    ValueConverter converter = ValueConverters.forType(getClass().getDeclaredField("timeouts").getGenericType());
+    Object timeouts = converter.convert("read=2s,connect=500");
+    assertThat(converter.convert(ValueConverters.format(timeouts))).isEqualTo(timeouts);
+    assertThat(ValueConverters.format(new long[] {1, 2})).isEqualTo("1,2");
+    assertThat(ValueConverters.format(TimeUnit.DAYS)).isEqualTo("DAYS");
+  }
+
+  @Test
+  public void testSeparatorsAreEscaped() throws Exception {
+    ValueConverter namesConverter = ValueConverters.forType(getClass().getDeclaredField("names").getGenericType());
+    List<String> names = Arrays.asList("a,b", "c\\d", "C:\\temp");
+    assertThat(ValueConverters.format(names)).isEqualTo("a\\,b,c\\\\d,C:\\\\temp");
+    assertThat(namesConverter.convert(ValueConverters.format(names))).isEqualTo(names);
+    assertThat(namesConverter.convert("C:\\temp")).isEqualTo(Arrays.asList("C:\\temp"));
+
+    ValueConverter labelsConverter = ValueConverters.forType(getClass().getDeclaredField("labels").getGenericType());
+    Map<String, String> labels = new LinkedHashMap<>();
+    labels.put("k=1", "x=1,y");
+    labels.put("other", "");
+    assertThat(labelsConverter.convert(ValueConverters.format(labels))).isEqualTo(labels);
+    assertThat(labelsConverter.convert("url=http://host?a=b")).isEqualTo(Collections.singletonMap("url", "http://host?a=b"));
+  }
+
+  @Test
+  public void testUnsupportedTypes() throws Exception {
+    assertThat(ValueConverters.isSupported(getClass().getDeclaredField("unsupported").getGenericType())).isFalse();
+    assertThat(ValueConverters.isSupported(Object.class)).isFalse();
+    assertThat(ValueConverters.isSupported(Duration[].class)).isTrue();
+    assertThat(ValueConverters.isSupported(LocalDate.class)).isTrue();
+    //types that merely have a String constructor or a parse method are not settable
+    assertThat(ValueConverters.isSupported(File.class)).isFalse();
+    assertThat(ValueConverters.isSupported(StringBuilder.class)).isFalse();
+    assertThat(ValueConverters.isSupported(Date.class)).isFalse();
+    assertThat(ValueConverters.isSupported(URL.class)).isFalse();
+    assertThat(ValueConverters.isSupported(Exception.class)).isFalse();
+  }
+
+}
@@ -0,0 +1,201 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.InstanceInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncFanOutClientTest {
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private ConfigProps configProps;
+  private AsyncFanOutClient client;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final AtomicInteger flakyCalls = new AtomicInteger();
+  private final AtomicInteger downCalls = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/ok", exchange -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      sleep(20);
+      exchange.getResponseHeaders().add("ETag", "\"v1\"");
+      respond(exchange, 200, "{\"slave\":\"" + exchange.getRequestHeaders().getFirst("isSlaveInstance") + "\"}");
+      inFlight.decrementAndGet();
+    });
+    server.createContext("/broken", exchange -> respond(exchange, 500, "{}"));
+    server.createContext("/flaky", exchange -> respond(exchange, flakyCalls.incrementAndGet() == 1 ? 503 : 200, "{}"));
+    server.createContext("/down", exchange -> {
+      downCalls.incrementAndGet();
+      respond(exchange, 503, "{}");
+    });
+    server.createContext("/slow", exchange -> {
+      sleep(2000);
+      respond(exchange, 200, "{}");
+    });
+    serverExecutor = Executors.newFixedThreadPool(8);
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    configProps = new ConfigProps();
+    configProps.setConnectionTimeout(1000);
+    configProps.setReadTimeout(500);
+    configProps.setMaxTotalConnections(16);
+    configProps.setMaxConnectionsPerRoute(16);
+    configProps.setKeepAlive(1000);
+    configProps.setFanOutIoThreads(1);
+    configProps.setFanOutMaxInFlight(2);
+    configProps.setFanOutTimeout(5000);
+    client = new AsyncFanOutClient();
+    ReflectionTestUtils.setField(client, "configProps", configProps);
+    ReflectionTestUtils.setField(client, "objectMapper", new ObjectMapper());
+    client.init();
+  }
+
+  @After
+  public void tearDown() {
+    client.destroy();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testResponsesAreReportedLikeTheBlockingBackend() throws Exception {
+    InstanceResponse ok = call("ok");
+    assertThat(ok.isSuccessful()).isTrue();
+    assertThat(ok.getHttpStatus()).isEqualTo(200);
+    assertThat(ok.getEtag()).isEqualTo("\"v1\"");
+    assertThat(ok.getBody()).containsEntry("slave", "true");
+
+    InstanceResponse broken = call("broken");
+    assertThat(broken.getStatus()).isEqualTo(InstanceResponse.Status.FAILED);
+    assertThat(broken.getHttpStatus()).isEqualTo(500);
+
+    assertThat(call("slow").getStatus()).isEqualTo(InstanceResponse.Status.FAILED);
+  }
+
+  @Test
+  public void testFanOutKeepsCallsInFlightBounded() {
+    List<ServiceInstance> instances = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      instances.add(new EurekaServiceInstance(instanceInfo("instance-" + i)));
+    }
+
+    Map<String, InstanceResponse> responses =
+        service().executeOnInstances("ok", HttpMethod.PUT, "abc:xyz", instances, "updateConfig");
+    assertThat(responses).hasSize(10);
+    assertThat(responses.values()).allMatch(InstanceResponse::isSuccessful);
+    assertThat(maxInFlight.get()).isBetween(1, 2);
+  }
+
+  @Test
+  public void testUnavailableInstanceIsRetriedButErrorsAreNot() {
+    configProps.setFanOutRetries(2);
+    configProps.setFanOutRetryBackoff(10);
+    DynamicConfigService service = service();
+
+    InstanceResponse flaky = service.executeOnInstances("flaky", HttpMethod.PUT, "abc:xyz",
+        Collections.singletonList(new EurekaServiceInstance(instanceInfo("flaky"))), "updateConfig").get("flaky");
+    assertThat(flaky.isSuccessful()).isTrue();
+    assertThat(flaky.getAttempts()).isEqualTo(2);
+
+    InstanceResponse broken = service.executeOnInstances("broken", HttpMethod.PUT, "abc:xyz",
+        Collections.singletonList(new EurekaServiceInstance(instanceInfo("broken"))), "updateConfig").get("broken");
+    assertThat(broken.getHttpStatus()).isEqualTo(500);
+    assertThat(broken.getAttempts()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCircuitOpensAfterRepeatedFailures() {
+    configProps.setCircuitFailureThreshold(2);
+    configProps.setCircuitOpenTime(60000);
+    DynamicConfigService service = service();
+    List<ServiceInstance> instances = Collections.singletonList(new EurekaServiceInstance(instanceInfo("down")));
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(service.executeOnInstances("down", HttpMethod.GET, null, instances, "getConfig").get("down")
+          .getStatus()).isEqualTo(InstanceResponse.Status.FAILED);
+    }
+    InstanceResponse skipped = service.executeOnInstances("down", HttpMethod.GET, null, instances, "getConfig")
+        .get("down");
+    assertThat(skipped.getStatus()).isEqualTo(InstanceResponse.Status.CIRCUIT_OPEN);
+    assertThat(downCalls.get()).isEqualTo(2);
+  }
+
+  private DynamicConfigService service() {
+    DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
+    DynamicConfigService service = new DynamicConfigService();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    ReflectionTestUtils.setField(service, "asyncFanOutClient", client);
+    return service;
+  }
+
+  private InstanceResponse call(String path) throws Exception {
+    CompletableFuture<InstanceResponse> response = new CompletableFuture<>();
+    client.execute(instanceInfo(path), baseUrl() + path, HttpMethod.GET, null, null, "getConfig",
+        response::complete);
+    return response.get(5, TimeUnit.SECONDS);
+  }
+
+  private InstanceInfo instanceInfo(String instanceId) {
+    InstanceInfo instanceInfo = mock(InstanceInfo.class);
+    when(instanceInfo.getInstanceId()).thenReturn(instanceId);
+    when(instanceInfo.getHomePageUrl()).thenReturn(baseUrl());
+    return instanceInfo;
+  }
+
+  private String baseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.example.service;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigCatchUpTest {
+
+  private static final String ORCHESTRATOR_URL = "http://order-api/order-api/v1/config/{serviceId}/overrides";
+
+  @Mock
+  private ConfigProps configProps;
+
+  @Mock
+  private DynamicConfigService configService;
+
+  @Mock
+  private DiscoveryClient discoveryClient;
+
+  @Mock
+  private OverrideJournal journal;
+
+  @Mock
+  private RestTemplate restTemplate;
+
+  @InjectMocks
+  private ConfigCatchUp catchUp;
+
+  private final Map<String, String> overrides = Collections.singletonMap("ConfigProps.readTimeout", "3000");
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(catchUp, "serviceId", "order-service-v1");
+    ReflectionTestUtils.setField(catchUp, "contextPath", "/order-rs");
+  }
+
+  @Test
+  public void testReplaysJournalBeforeOrchestratorState() {
+    when(configProps.getCatchUpUrl()).thenReturn(ORCHESTRATOR_URL);
+    when(restTemplate.exchange(eq(ORCHESTRATOR_URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(ConfigChange.class), eq("order-service-v1")))
+        .thenReturn(new ResponseEntity<>(new ConfigChange(7, "order-service-v1", overrides, 0), HttpStatus.OK));
+
+    catchUp.afterSingletonsInstantiated();
+    catchUp.onInstanceRegistered();
+
+    InOrder inOrder = inOrder(journal, configService);
+    inOrder.verify(journal).replay();
+    inOrder.verify(configService).applyOverrides(overrides, "catchUp");
+    verify(configService, times(1)).applyOverrides(any(), any());
+  }
+
+  @Test
+  public void testFallsBackToPeers() {
+    ServiceInstance down = new DefaultServiceInstance("order-service-v1", "10.0.0.1", 8080, false);
+    ServiceInstance up = new DefaultServiceInstance("order-service-v1", "10.0.0.2", 8080, false);
+    when(configProps.isCatchUpFromPeers()).thenReturn(true);
+    when(discoveryClient.getInstances("order-service-v1")).thenReturn(Arrays.asList(down, up));
+    when(restTemplate.exchange(any(String.class), eq(HttpMethod.GET), any(HttpEntity.class), eq(ConfigChange.class), eq("order-service-v1")))
+        .thenAnswer(invocation -> {
+          if (invocation.getArgument(0).equals("http://10.0.0.1:8080/order-rs/v1/config/{serviceId}/overrides")) {
+            throw new ResourceAccessException("Connection refused");
+          }
+          return new ResponseEntity<>(new ConfigChange(3, "order-service-v1", overrides, 0), HttpStatus.OK);
+        });
+
+    catchUp.catchUp();
+
+    verify(configService).applyOverrides(overrides, "catchUp");
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    catchUp.catchUp();
+    verify(restTemplate, never()).exchange(any(String.class), any(HttpMethod.class), any(HttpEntity.class), eq(ConfigChange.class), any(Object[].class));
+    verify(configService, never()).applyOverrides(any(), any());
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.config.ConfigProps;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ConfigChangeFeedTest {
+
+  private ConfigChangeFeed changeFeed;
+
+  @Before
+  public void setUp() {
+    ConfigProps configProps = new ConfigProps();
+    configProps.setStreamHistorySize(3);
+    configProps.setStreamTimeout(1000L);
+    changeFeed = new ConfigChangeFeed();
+    ReflectionTestUtils.setField(changeFeed, "configProps", configProps);
+  }
+
+  @Test
+  public void testRevisionsIncreaseAcrossServices() {
+    assertThat(changeFeed.publish("order-service-v1", Collections.singletonMap("a", "1")).getRevision()).isEqualTo(1);
+    assertThat(changeFeed.publish("bag-service-v1", Collections.singletonMap("b", "2")).getRevision()).isEqualTo(2);
+    assertThat(changeFeed.publish("order-service-v1", Collections.singletonMap("a", "3")).getRevision()).isEqualTo(3);
+  }
+
+  @Test
+  public void testChangesSinceRevisionAreFilteredByService() {
+    changeFeed.publish("order-service-v1", Collections.singletonMap("a", "1"));
+    changeFeed.publish("bag-service-v1", Collections.singletonMap("b", "2"));
+    changeFeed.publish("order-service-v1", Collections.singletonMap("a", "3"));
+    List<ConfigChange> changes = changeFeed.getChangesSince("order-service-v1", 1);
+    assertThat(changes).extracting(ConfigChange::getRevision).containsExactly(3L);
+    assertThat(changeFeed.getChangesSince("order-service-v1", 3)).isEmpty();
+  }
+
+  @Test
+  public void testSubscriberBehindHistoryNeedsFullState() {
+    changeFeed.publish("order-service-v1", Collections.singletonMap("a", "1"));
+    changeFeed.publish("order-service-v1", Collections.singletonMap("b", "2"));
+    changeFeed.publish("order-service-v1", Collections.singletonMap("a", "3"));
+    changeFeed.publish("order-service-v1", Collections.singletonMap("c", "4"));
+    assertThat(changeFeed.getChangesSince("order-service-v1", 0)).isNull();
+    assertThat(changeFeed.getChangesSince("order-service-v1", 1)).hasSize(3);
+    ConfigChange latest = changeFeed.getLatest("order-service-v1");
+    assertThat(latest.getRevision()).isEqualTo(4);
+    assertThat(latest.getProps()).containsEntry("a", "3").containsEntry("b", "2").containsEntry("c", "4");
+  }
+
+  @Test
+  public void testSubscriberAheadOfFeedNeedsFullState() {
+    changeFeed.publish("order-service-v1", Collections.singletonMap("a", "1"));
+    assertThat(changeFeed.getChangesSince("order-service-v1", 42)).isNull();
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigStreamSubscriberTest {
+
+  @Mock
+  private DynamicConfigService configService;
+
+  @InjectMocks
+  private ConfigStreamSubscriber subscriber;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testUnknownKeysAreSkipped() throws Exception {
+    Map<String, String> props = new LinkedHashMap<>();
+    props.put("ConfigProps.readTimeout", "3000");
+    props.put("NewConfig.unknown", "true");
+    Map<String, String> applied = Collections.singletonMap("ConfigProps.readTimeout", "3000");
+    when(configService.applyOverrides(props, "streamApply")).thenReturn(applied);
+    when(configService.getKnownKeys(props.keySet()))
+        .thenReturn(new LinkedHashSet<>(Collections.singletonList("ConfigProps.readTimeout")));
+
+    subscriber.dispatch(event(7L, props));
+
+    assertThat(subscriber.getLastRevision()).isEqualTo(7L);
+  }
+
+  @Test
+  public void testFailedKnownKeyIsReceivedAgain() throws Exception {
+    Map<String, String> props = Collections.singletonMap("ConfigProps.readTimeout", "soon");
+    when(configService.applyOverrides(props, "streamApply")).thenReturn(Collections.emptyMap());
+    when(configService.getKnownKeys(props.keySet()))
+        .thenReturn(new LinkedHashSet<>(Collections.singletonList("ConfigProps.readTimeout")));
+
+    assertThatThrownBy(() -> subscriber.dispatch(event(7L, props))).hasMessageContaining("ConfigProps.readTimeout");
+
+    //the reconnect resumes from the last applied revision, so the change is sent again
+    assertThat(subscriber.getLastRevision()).isZero();
+  }
+
+  private String event(long revision, Map<String, String> props) throws Exception {
+    return objectMapper.writeValueAsString(new ConfigChange(revision, "order-service-v1", props, 0L));
+  }
+
+}
@@ -1,21 +1,29 @@
 package com.example.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.example.config.ConfigProps;
 import com.netflix.appinfo.InstanceInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
-import org.junit.Ignore;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient;
@@ -23,16 +31,24 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @RunWith(MockitoJUnitRunner.class)
@@ -47,41 +63,235 @@ public class DynamicConfigServiceTest {
   @Mock
   private ConfigProps configProps;
 
+  @Spy
+  private ConfigSnapshotHolder snapshotHolder = new ConfigSnapshotHolder();
+
+  @Spy
+  private FlagRuleHolder flagRuleHolder = new FlagRuleHolder();
+
+  @Mock
+  private PropertyOverlay propertyOverlay;
+
+  @Spy
+  private DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
   @InjectMocks
   private DynamicConfigService service;
 
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
+    ReflectionTestUtils.setField(metrics, "meterRegistry", meterRegistry);
+    ReflectionTestUtils.setField(metrics, "configProps", configProps);
   }
 
-  //@Test
-  @Ignore
+  @Test
   public void testExecuteOnInstances() {
     List<ServiceInstance> instances = new ArrayList<>();
     InstanceInfo instanceInfo = mock(InstanceInfo.class);
     RestTemplate restTemplate = mock(RestTemplate.class);
     service = Mockito.spy(DynamicConfigService.class);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
     instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(instanceInfo));
-    when(service.getRestTemplate()).thenReturn(restTemplate);
+    when(instanceInfo.getInstanceId()).thenReturn("instance-1");
+    doReturn(restTemplate).when(service).getRestTemplate();
     ReflectionTestUtils.setField(service, "configProps", configProps);
-    when(configProps.getMaxTotalConnections()).thenReturn(2);
-    when(restTemplate.exchange(any(), any(), any(), any(ParameterizedTypeReference.class))).thenReturn(new ResponseEntity<Map<String, Object>>(HttpStatus.OK));
-    Map<String, Object> config = service.executeOnInstances("/v1/config/order-service-v1",
+    when(configProps.getFanOutParallelism()).thenReturn(2);
+    when(configProps.getFanOutTimeout()).thenReturn(1000L);
+    when(restTemplate.exchange(any(String.class), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenReturn(new ResponseEntity<Map<String, Object>>(HttpStatus.OK));
+    service.init();
+    Map<String, InstanceResponse> config = service.executeOnInstances("/v1/config/order-service-v1",
             HttpMethod.GET,null, instances, "getConfig");
-    assertThat(config).isNotNull();
+    assertThat(config).containsOnlyKeys("instance-1");
+    assertThat(config.get("instance-1").isSuccessful()).isTrue();
   }
 
-  //@Test(expected = ApplicationException.class)
-  @Ignore
-  public void testExecuteOnInstancesException() {
+  @Test
+  public void testExecuteOnInstancesReportsPartialFailure() {
     List<ServiceInstance> instances = new ArrayList<>();
-    InstanceInfo instanceInfo = mock(InstanceInfo.class);
+    InstanceInfo healthy = mock(InstanceInfo.class);
+    InstanceInfo broken = mock(InstanceInfo.class);
+    RestTemplate restTemplate = mock(RestTemplate.class);
     service = Mockito.spy(DynamicConfigService.class);
-    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(instanceInfo));
-    ReflectionTestUtils.setField(configProps, "maxTotalConnections", 2);
-    when(service.getRestTemplate()).thenThrow(new RuntimeException("Oops! Failed to update config."));
-    Map<String, Object> config = service.executeOnInstances("/v1/config/order-service-v1", HttpMethod.GET,null, instances, "getConfig");
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(healthy));
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(broken));
+    when(healthy.getInstanceId()).thenReturn("healthy");
+    when(healthy.getHomePageUrl()).thenReturn("http://healthy/");
+    when(broken.getInstanceId()).thenReturn("broken");
+    when(broken.getHomePageUrl()).thenReturn("http://broken/");
+    doReturn(restTemplate).when(service).getRestTemplate();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    when(configProps.getFanOutParallelism()).thenReturn(2);
+    when(configProps.getFanOutTimeout()).thenReturn(1000L);
+    when(restTemplate.exchange(eq("http://healthy/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenReturn(new ResponseEntity<Map<String, Object>>(HttpStatus.CREATED));
+    when(restTemplate.exchange(eq("http://broken/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenThrow(new RuntimeException("Connection refused"));
+    service.init();
+    Map<String, InstanceResponse> config = service.executeOnInstances("v1/config/order-service-v1",
+            HttpMethod.PUT, "abc:xyz", instances, "updateConfig");
+    assertThat(config.get("healthy").getStatus()).isEqualTo(InstanceResponse.Status.OK);
+    assertThat(config.get("broken").getStatus()).isEqualTo(InstanceResponse.Status.FAILED);
+    assertThat(config.get("broken").getError()).contains("Connection refused");
+    assertThat(meterRegistry.get("dynamic.config.fanout.instance")
+        .tags("op", "updateConfig", "status", "failed").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("dynamic.config.fanout.instance")
+        .tags("op", "updateConfig", "status", "ok").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void testExecuteOnInstancesStreamsInCompletionOrder() {
+    List<ServiceInstance> instances = new ArrayList<>();
+    InstanceInfo slow = mock(InstanceInfo.class);
+    InstanceInfo fast = mock(InstanceInfo.class);
+    InstanceInfo stuck = mock(InstanceInfo.class);
+    RestTemplate restTemplate = mock(RestTemplate.class);
+    service = Mockito.spy(DynamicConfigService.class);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(slow));
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(fast));
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(stuck));
+    when(slow.getInstanceId()).thenReturn("slow");
+    when(slow.getHomePageUrl()).thenReturn("http://slow/");
+    when(fast.getInstanceId()).thenReturn("fast");
+    when(fast.getHomePageUrl()).thenReturn("http://fast/");
+    when(stuck.getInstanceId()).thenReturn("stuck");
+    when(stuck.getHomePageUrl()).thenReturn("http://stuck/");
+    doReturn(restTemplate).when(service).getRestTemplate();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    when(configProps.getFanOutParallelism()).thenReturn(3);
+    when(configProps.getFanOutTimeout()).thenReturn(1000L);
+    when(restTemplate.exchange(eq("http://slow/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenAnswer(invocation -> {
+          Thread.sleep(200);
+          return new ResponseEntity<Map<String, Object>>(HttpStatus.OK);
+        });
+    when(restTemplate.exchange(eq("http://fast/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenReturn(new ResponseEntity<Map<String, Object>>(HttpStatus.OK));
+    when(restTemplate.exchange(eq("http://stuck/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenAnswer(invocation -> {
+          Thread.sleep(5000);
+          return new ResponseEntity<Map<String, Object>>(HttpStatus.OK);
+        });
+    service.init();
+    List<InstanceResponse> responses = new ArrayList<>();
+    service.executeOnInstances("v1/config/order-service-v1", HttpMethod.GET, null, instances, "getConfig", responses::add);
+    service.destroy();
+    assertThat(responses).extracting(InstanceResponse::getInstanceId).containsExactly("fast", "slow", "stuck");
+    assertThat(responses.get(2).getStatus()).isEqualTo(InstanceResponse.Status.TIMEOUT);
+  }
+
+  @Test
+  public void testSlowCallIsHedgedAndTheLoserCancelled() throws Exception {
+    List<ServiceInstance> instances = new ArrayList<>();
+    InstanceInfo slow = mock(InstanceInfo.class);
+    RestTemplate restTemplate = mock(RestTemplate.class);
+    service = Mockito.spy(DynamicConfigService.class);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(slow));
+    when(slow.getInstanceId()).thenReturn("slow");
+    when(slow.getHomePageUrl()).thenReturn("http://slow/");
+    doReturn(restTemplate).when(service).getRestTemplate();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    when(configProps.getFanOutParallelism()).thenReturn(2);
+    when(configProps.getFanOutTimeout()).thenReturn(3000L);
+    when(configProps.getFanOutHedgeDelay()).thenReturn(50L);
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch loserInterrupted = new CountDownLatch(1);
+    when(restTemplate.exchange(eq("http://slow/v1/config/order-service-v1"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenAnswer(invocation -> {
+          if (calls.incrementAndGet() == 1) {
+            try {
+              Thread.sleep(5000);
+            } catch (InterruptedException ex) {
+              loserInterrupted.countDown();
+              throw ex;
+            }
+          }
+          return new ResponseEntity<Map<String, Object>>(HttpStatus.OK);
+        });
+    service.init();
+    Map<String, InstanceResponse> config = service.executeOnInstances("v1/config/order-service-v1",
+        HttpMethod.GET, null, instances, "getConfig");
+    assertThat(loserInterrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    service.destroy();
+    assertThat(config.get("slow").getStatus()).isEqualTo(InstanceResponse.Status.OK);
+    assertThat(config.get("slow").getAttempts()).isEqualTo(2);
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDiffConfigFetchesOnlyDriftingKeysOncePerVariant() {
+    List<ServiceInstance> instances = new ArrayList<>();
+    RestTemplate restTemplate = mock(RestTemplate.class);
+    service = Mockito.spy(DynamicConfigService.class);
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    for (String instanceId : new String[]{"pod-1", "pod-2", "pod-3"}) {
+      InstanceInfo instanceInfo = mock(InstanceInfo.class);
+      when(instanceInfo.getInstanceId()).thenReturn(instanceId);
+      when(instanceInfo.getHomePageUrl()).thenReturn("http://" + instanceId + "/");
+      instances.add(new EurekaDiscoveryClient.EurekaServiceInstance(instanceInfo));
+    }
+    doReturn(restTemplate).when(service).getRestTemplate();
+    ReflectionTestUtils.setField(service, "configProps", configProps);
+    when(configProps.getFanOutParallelism()).thenReturn(3);
+    when(configProps.getFanOutTimeout()).thenReturn(1000L);
+    mockDigest(restTemplate, "pod-1", "a", "2000");
+    mockDigest(restTemplate, "pod-2", "a", "2000");
+    mockDigest(restTemplate, "pod-3", "b", "3000");
+    mockValue(restTemplate, "pod-1", 2000);
+    mockValue(restTemplate, "pod-3", 3000);
+    service.init();
+
+    Map<String, Object> diff = service.diffConfig("v1/config/order-service-v1/diff", instances, "diffConfig");
+    service.destroy();
+
+    assertThat(diff.get("inSync")).isEqualTo(false);
+    Map<String, Object> drift = (Map<String, Object>) diff.get("drift");
+    assertThat(drift).containsOnlyKeys("ConfigProps.readTimeout");
+    assertThat(drift.get("ConfigProps.readTimeout").toString())
+        .contains("value=2000, instances=[pod-1, pod-2]", "value=3000, instances=[pod-3]");
+    verify(restTemplate, never()).exchange(eq("http://pod-2/v1/config/order-service-v1/diff?keys=ConfigProps.readTimeout"),
+        any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class));
+  }
+
+  private void mockDigest(RestTemplate restTemplate, String instanceId, String root, String readTimeout) {
+    Map<String, Object> digest = new HashMap<>();
+    Map<String, String> keys = new HashMap<>();
+    keys.put("ConfigProps.readTimeout", readTimeout);
+    keys.put("ConfigProps.connectionTimeout", "1000");
+    digest.put("root", root);
+    digest.put("keys", keys);
+    when(restTemplate.exchange(eq("http://" + instanceId + "/v1/config/order-service-v1/diff"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenReturn(new ResponseEntity<>(digest, HttpStatus.OK));
+  }
+
+  private void mockValue(RestTemplate restTemplate, String instanceId, Object readTimeout) {
+    when(restTemplate.exchange(eq("http://" + instanceId + "/v1/config/order-service-v1/diff?keys=ConfigProps.readTimeout"), any(HttpMethod.class), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+        .thenReturn(new ResponseEntity<Map<String, Object>>(Collections.singletonMap("ConfigProps.readTimeout", readTimeout), HttpStatus.OK));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetConfigDigestChangesWithValue() {
+    ConfigProps config = new ConfigProps();
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    Map<String, Object> before = service.getConfigDigest();
+    service.updateConfig("ConfigProps.readTimeout", "3000");
+    Map<String, Object> after = service.getConfigDigest();
+    assertThat(after.get("root")).isNotEqualTo(before.get("root"));
+    assertThat((Map<String, String>) after.get("keys")).hasSize(34);
+    assertThat(((Map<String, String>) after.get("keys")).get("ConfigProps.connectionTimeout"))
+        .isEqualTo(((Map<String, String>) before.get("keys")).get("ConfigProps.connectionTimeout"));
+    assertThat(service.getConfigValues(Collections.singletonList("ConfigProps.readTimeout")))
+        .containsEntry("ConfigProps.readTimeout", 3000);
   }
 
   @Test
@@ -95,7 +305,7 @@ public class DynamicConfigServiceTest {
     when(configProps.getBasePackage()).thenReturn("com.example");
     Map<String, Object> configuration = service.getConfig( false);
     assertThat(configuration).isNotNull();
-    assertEquals(5, configuration.size());
+    assertEquals(35, configuration.size());
   }
 
   @Test
@@ -110,7 +320,20 @@ public class DynamicConfigServiceTest {
     when(configProps.getBasePackage()).thenReturn("com.example");
     Map<String, Object> configuration = service.getConfig( false);
     assertThat(configuration).isNotNull();
-    assertEquals(5, configuration.size());
+    assertEquals(35, configuration.size());
+  }
+
+  @Test
+  public void testConfigRegistryIsBuiltOnce() {
+    ConfigProps config = new ConfigProps();
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(context.getBeansWithAnnotation(Configuration.class)).thenReturn(Collections.singletonMap("configProps", config));
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    service.getConfig(false);
+    service.updateConfig("ConfigProps.readTimeout", "3000");
+    assertEquals(3000, service.getConfig(false).get("ConfigProps.readTimeout"));
+    verify(context, times(1)).getBeanDefinitionNames();
   }
 
   @Test
@@ -123,6 +346,164 @@ public class DynamicConfigServiceTest {
     assertThat(result).isTrue();
   }
 
+  @Test
+  public void testValidateConfigsAppliesNothing() {
+    ConfigProps config = new ConfigProps();
+    config.setReadTimeout(2000);
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    service.validateConfigs(Collections.singletonMap("ConfigProps.readTimeout", "3000"));
+    assertThatThrownBy(() -> service.validateConfigs(Collections.singletonMap("ConfigProps.readTimeout", "abc")))
+        .hasMessage("Oops! Failed to update config.");
+    assertThat(config.getReadTimeout()).isEqualTo(2000);
+  }
+
+  @Test
+  public void testUpdatePropertyResolvesValueFieldsAgain() {
+    ConfigProps config = new ConfigProps();
+    config.setReadTimeout(2000);
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    when(configurableEnvironment.getPropertySources()).thenReturn(new MutablePropertySources());
+    assertThat(service.updateConfig("dynamic-config.readTimeout", "2500")).isTrue();
+    assertThat(config.getReadTimeout()).isEqualTo(2500);
+    verify(propertyOverlay).apply(Collections.singletonMap("dynamic-config.readTimeout", "2500"));
+    assertThat(service.getConfig(false, 0L)).containsOnlyKeys("ConfigProps.readTimeout");
+  }
+
+  @Test
+  public void testUpdateMultipleConfigurationsIsAtomic() {
+    ConfigProps config = new ConfigProps();
+    config.setReadTimeout(2000);
+    config.setConnectionTimeout(1000);
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    Map<String, String> props = new LinkedHashMap<>();
+    props.put("ConfigProps.readTimeout", "3000");
+    props.put("ConfigProps.connectionTimeout", "not-a-number");
+    try {
+      service.updateConfigs(props);
+    } catch (RuntimeException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Oops! Failed to update config.");
+    }
+    assertThat(config.getReadTimeout()).isEqualTo(2000);
+    assertThat(snapshotHolder.getSnapshot().isEmpty()).isTrue();
+
+    props.put("ConfigProps.connectionTimeout", "1500");
+    service.updateConfigs(props);
+    assertThat(config.getReadTimeout()).isEqualTo(3000);
+    assertThat(config.getConnectionTimeout()).isEqualTo(1500);
+    assertThat(snapshotHolder.getSnapshot().getRevision()).isEqualTo(1);
+    assertThat(snapshotHolder.getSnapshot().getValues())
+        .containsEntry("ConfigProps.readTimeout", 3000).containsEntry("ConfigProps.connectionTimeout", 1500);
+    assertThat(meterRegistry.get("dynamic.config.update").tags("op", "updateConfig", "outcome", "failure")
+        .timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("dynamic.config.update").tags("op", "updateConfig", "outcome", "success")
+        .timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetConfigSinceRevision() {
+    ConfigProps config = new ConfigProps();
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    String initialETag = service.getConfigETag(false, null);
+    service.updateConfig("ConfigProps.readTimeout", "3000");
+    service.updateConfig("ConfigProps.connectionTimeout", "1500");
+    assertThat(service.getConfigETag(false, null)).isNotEqualTo(initialETag);
+    assertThat(service.getConfig(false, 1L)).containsOnlyKeys("ConfigProps.connectionTimeout");
+    assertThat(service.getConfig(false, 0L)).containsOnlyKeys("ConfigProps.readTimeout", "ConfigProps.connectionTimeout");
+    assertThat(service.getConfig(false, 2L)).isEmpty();
+    assertThat(service.getConfig(false, 5L)).hasSize(34);
+  }
+
+  @Test
+  public void testETagIsOnlyRecognisedByTheRunThatIssuedIt() {
+    String etag = service.getConfigETag(false, null);
+    assertThat(service.isIssuedHere(etag)).isTrue();
+    assertThat(service.isIssuedHere("W/" + etag + ", \"other\"")).isTrue();
+    assertThat(service.isIssuedHere("\"0-" + etag.substring(1))).isFalse();
+    assertThat(service.isIssuedHere(null)).isFalse();
+  }
+
+  @Test
+  public void testApplyOverridesSkipsUnknownKeys() {
+    ConfigProps config = new ConfigProps();
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    when(configurableEnvironment.getPropertySources()).thenReturn(new MutablePropertySources());
+    Map<String, String> overrides = new LinkedHashMap<>();
+    overrides.put("Removed.field", "1");
+    overrides.put("ConfigProps.readTimeout", "3000");
+    assertThat(service.applyOverrides(overrides, "catchUp")).containsOnlyKeys("ConfigProps.readTimeout");
+    assertThat(config.getReadTimeout()).isEqualTo(3000);
+    assertThat(service.getOverrides("order-service-v1").getProps())
+        .containsExactly(new AbstractMap.SimpleEntry<>("ConfigProps.readTimeout", "3000"));
+  }
+
+  @Test
+  public void testApplyOverridesIsAllOrNothingForKnownKeys() {
+    ConfigProps config = new ConfigProps();
+    config.setReadTimeout(2000);
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(config);
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    Map<String, String> overrides = new LinkedHashMap<>();
+    overrides.put("ConfigProps.readTimeout", "3000");
+    overrides.put("ConfigProps.connectionTimeout", "soon");
+    assertThat(service.applyOverrides(overrides, "catchUp")).isEmpty();
+    assertThat(config.getReadTimeout()).isEqualTo(2000);
+  }
+
+  @Test
+  public void testUpdateFlagRulesRejectsPercentageWithoutHashBy() {
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(new ConfigProps());
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    FlagRule rule = new FlagRule();
+    rule.setAttribute("region");
+    rule.setIn(Collections.singletonList("EU"));
+    rule.setPercentage(10d);
+    rule.setValue("500");
+    assertThatThrownBy(() -> service.updateFlagRules(
+        Collections.singletonMap("ConfigProps.readTimeout", Collections.singletonList(rule))))
+        .hasMessage("Oops! A rule needs hashBy and percentage together, for ConfigProps.readTimeout.");
+    rule.setPercentage(null);
+    rule.setHashBy("userId");
+    assertThatThrownBy(() -> service.updateFlagRules(
+        Collections.singletonMap("ConfigProps.readTimeout", Collections.singletonList(rule))))
+        .hasMessage("Oops! A rule needs hashBy and percentage together, for ConfigProps.readTimeout.");
+    assertThat(service.getFlagRules()).isEmpty();
+  }
+
+  @Test
+  public void testUpdateFlagRulesValidatesValues() {
+    when(context.getBeanDefinitionNames()).thenReturn(new String[]{"configProps"});
+    when(context.getBean("configProps")).thenReturn(new ConfigProps());
+    when(configProps.getBasePackage()).thenReturn("com.example");
+    FlagRule rule = new FlagRule();
+    rule.setHashBy("userId");
+    rule.setPercentage(10d);
+    rule.setValue("fast");
+    try {
+      service.updateFlagRules(Collections.singletonMap("ConfigProps.readTimeout", Collections.singletonList(rule)));
+    } catch (RuntimeException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Oops! Rule value is not valid for ConfigProps.readTimeout.");
+    }
+    assertThat(service.getFlagRules()).isEmpty();
+
+    rule.setValue("500");
+    service.updateFlagRules(Collections.singletonMap("ConfigProps.readTimeout", Collections.singletonList(rule)));
+    assertThat(service.getFlagRules()).containsOnlyKeys("ConfigProps.readTimeout");
+    service.updateFlagRules(Collections.singletonMap("ConfigProps.readTimeout", Collections.emptyList()));
+    assertThat(service.getFlagRules()).isEmpty();
+  }
+
   @Test(expected = RuntimeException.class)
   public void testUpdateConfigurationIfInvalidKey() {
     ReflectionTestUtils.setField(configProps, "basePackage", "com.example");
@@ -133,19 +514,15 @@ public class DynamicConfigServiceTest {
   }
 
   @Test
-  public void testSetLogLevel() {
-    boolean result = service.updateLog("com.example", "DEBUG");
-    assertThat(result).isTrue();
-  }
-
-  @Test(expected = RuntimeException.class)
-  public void testSetLogLevelIfInvalidLevel() {
-    service.updateLog("com.example", "XYZ");
-  }
-
-  @Test(expected = RuntimeException.class)
-  public void testSetLogLevelIfInvalidPackage() {
-    service.updateLog("abc", "INFO");
+  public void testGetConnectionPoolStats() {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(64);
+    connectionManager.setDefaultMaxPerRoute(4);
+    ReflectionTestUtils.setField(service, "connectionManager", connectionManager);
+    Map<String, Object> stats = service.getConnectionPoolStats();
+    assertThat(stats).containsEntry("max", 64).containsEntry("maxPerRoute", 4)
+        .containsEntry("leased", 0).containsEntry("pending", 0);
+    connectionManager.shutdown();
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.example.config.ConfigProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LogLevelServiceTest {
+
+  private LogLevelService service;
+  private LoggerContext loggerContext;
+
+  @Before
+  public void setUp() {
+    DynamicConfigMetrics metrics = new DynamicConfigMetrics();
+    ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(metrics, "configProps", new ConfigProps());
+    service = new LogLevelService();
+    ReflectionTestUtils.setField(service, "metrics", metrics);
+    service.init();
+    loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+  }
+
+  @After
+  public void tearDown() {
+    service.destroy();
+  }
+
+  @Test
+  public void testSetLogLevel() {
+    assertThat(service.updateLog("com.example", "DEBUG")).isTrue();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testSetLogLevelIfInvalidLevel() {
+    service.updateLog("com.example", "XYZ");
+  }
+
+  @Test
+  public void testUpdateLogsCoversPrefixAndLoggersNotCreatedYet() {
+    Logger child = loggerContext.getLogger("com.example.prefix.child");
+    child.setLevel(Level.INFO);
+    Logger sibling = loggerContext.getLogger("com.example.prefixed");
+    Map<String, String> logLevels = new LinkedHashMap<>();
+    logLevels.put("com.example.prefix", "DEBUG");
+    logLevels.put("com.example.later", "warn");
+    assertThat(service.updateLogs(logLevels, null))
+        .containsOnlyKeys("com.example.prefix", "com.example.prefix.child", "com.example.later");
+    assertThat(child.getLevel()).isEqualTo(Level.DEBUG);
+    assertThat(sibling.getLevel()).isNull();
+    assertThat(loggerContext.getLogger("com.example.later").getLevel()).isEqualTo(Level.WARN);
+  }
+
+  @Test
+  public void testUpdateLogsIsRejectedAsAWhole() {
+    Map<String, String> logLevels = new LinkedHashMap<>();
+    logLevels.put("com.example.valid", "DEBUG");
+    logLevels.put("com.example.invalid", "LOUD");
+    try {
+      service.updateLogs(logLevels, null);
+    } catch (RuntimeException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Oops! Incorrect log level or package.");
+    }
+    assertThat(loggerContext.exists("com.example.valid")).isNull();
+  }
+
+  @Test
+  public void testUpdateLogsRevertsAfterTtl() throws Exception {
+    Logger logger = loggerContext.getLogger("com.example.ttl");
+    logger.setLevel(Level.WARN);
+    service.updateLogs(Collections.singletonMap("com.example.ttl", "TRACE"), 60000L);
+    service.updateLogs(Collections.singletonMap("com.example.ttl", "DEBUG"), 100L);
+    assertThat(logger.getLevel()).isEqualTo(Level.DEBUG);
+    assertThat(service.getLogLevels(Collections.singletonList("com.example.ttl")).get("com.example.ttl").toString())
+        .contains("revertAt");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (logger.getLevel() != Level.WARN && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(logger.getLevel()).isEqualTo(Level.WARN);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetLogLevelsDoesNotCreateLoggers() {
+    loggerContext.getLogger("com.example.report").setLevel(Level.WARN);
+    Map<String, Object> level = (Map<String, Object>) service
+        .getLogLevels(Collections.singletonList("com.example.report.never.used")).get("com.example.report.never.used");
+    assertThat(level.get("level")).isNull();
+    assertThat(level.get("effectiveLevel")).isEqualTo("WARN");
+    assertThat(loggerContext.exists("com.example.report.never.used")).isNull();
+    assertThat(loggerContext.exists("com.example.report.never")).isNull();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testGetLogLevelsReportsEventRates() {
+    Logger logger = loggerContext.getLogger("com.example.rates.noisy");
+    for (int i = 0; i < 5; i++) {
+      logger.warn("event {}", i);
+    }
+    ((LogEventRates) ReflectionTestUtils.getField(service, "eventRates")).roll();
+    Map<String, Object> level = (Map<String, Object>) service
+        .getLogLevels(Collections.singletonList("com.example.rates")).get("com.example.rates");
+    assertThat(level).containsKeys("level", "effectiveLevel");
+    assertThat((Double) level.get("eventsPerSecond")).isGreaterThan(0d);
+  }
+
+}
@@ -0,0 +1,141 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class OverrideJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ConfigProps configProps;
+  private DynamicConfigService configService;
+  private OverrideJournal journal;
+
+  @Before
+  public void setUp() throws IOException {
+    configProps = mock(ConfigProps.class);
+    configService = mock(DynamicConfigService.class);
+    when(configProps.getJournalPath()).thenReturn(folder.getRoot().getAbsolutePath());
+    when(configProps.getJournalSyncInterval()).thenReturn(60000L);
+    when(configProps.getJournalCompactThreshold()).thenReturn(100);
+    journal = newJournal();
+  }
+
+  @After
+  public void tearDown() {
+    journal.destroy();
+  }
+
+  @Test
+  public void testOverridesSurviveRestartAndAreReplayedOnce() throws IOException {
+    journal.onConfigUpdated(event("ConfigProps.readTimeout", "3000"));
+    journal.onConfigUpdated(event("ConfigProps.connectionTimeout", "1500"));
+    journal.onConfigUpdated(event("ConfigProps.readTimeout", "4000"));
+    journal.destroy();
+
+    journal = newJournal();
+    journal.replay();
+
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("ConfigProps.connectionTimeout", "1500");
+    expected.put("ConfigProps.readTimeout", "4000");
+    verify(configService).applyOverrides(expected, "journalReplay");
+    assertThat(journal.getOverrides()).containsExactly(
+        entry("ConfigProps.connectionTimeout", "1500"), entry("ConfigProps.readTimeout", "4000"));
+    assertThat(Files.size(journalFile())).isZero();
+  }
+
+  @Test
+  public void testTornTailIsDiscarded() throws IOException {
+    journal.onConfigUpdated(event("ConfigProps.readTimeout", "3000"));
+    journal.destroy();
+    long validLength = Files.size(journalFile());
+    try (FileChannel channel = FileChannel.open(journalFile(), StandardOpenOption.APPEND)) {
+      channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 42, 1, 2, 3}));
+    }
+
+    journal = newJournal();
+
+    assertThat(journal.getOverrides()).containsOnly(entry("ConfigProps.readTimeout", "3000"));
+    assertThat(Files.size(journalFile())).isEqualTo(validLength);
+  }
+
+  @Test
+  public void testCompactionKeepsOnlyLatestValues() throws IOException {
+    for (int i = 0; i < 250; i++) {
+      journal.onConfigUpdated(event("ConfigProps.readTimeout", String.valueOf(i)));
+    }
+    journal.compact();
+    assertThat(Files.size(journalFile())).isZero();
+    journal.destroy();
+
+    journal = newJournal();
+    assertThat(journal.getOverrides()).containsOnly(entry("ConfigProps.readTimeout", "249"));
+  }
+
+  @Test
+  public void testAppendsDuringCompactionAreKept() throws IOException {
+    journal.destroy();
+    journal = new OverrideJournal() {
+      @Override
+      void writeSnapshot(Path file, Map<String, String> snapshot) throws IOException {
+        super.writeSnapshot(file, snapshot);
+        onConfigUpdated(event("ConfigProps.connectionTimeout", "1500"));
+      }
+    };
+    ReflectionTestUtils.setField(journal, "configProps", configProps);
+    ReflectionTestUtils.setField(journal, "configService", configService);
+    journal.init();
+    journal.onConfigUpdated(event("ConfigProps.readTimeout", "3000"));
+    journal.compact();
+    assertThat(Files.size(journalFile())).isPositive();
+    journal.destroy();
+
+    journal = newJournal();
+    assertThat(journal.getOverrides()).containsOnly(
+        entry("ConfigProps.readTimeout", "3000"), entry("ConfigProps.connectionTimeout", "1500"));
+  }
+
+  private OverrideJournal newJournal() throws IOException {
+    OverrideJournal newJournal = new OverrideJournal();
+    ReflectionTestUtils.setField(newJournal, "configProps", configProps);
+    ReflectionTestUtils.setField(newJournal, "configService", configService);
+    newJournal.init();
+    return newJournal;
+  }
+
+  private Path journalFile() {
+    return folder.getRoot().toPath().resolve(OverrideJournal.JOURNAL_FILE);
+  }
+
+  private static ConfigUpdatedEvent event(String key, String value) {
+    return new ConfigUpdatedEvent(OverrideJournalTest.class, Collections.singletonMap(key, value), 1L);
+  }
+
+  private static Map.Entry<String, String> entry(String key, String value) {
+    return new AbstractMap.SimpleEntry<>(key, value);
+  }
+
+}
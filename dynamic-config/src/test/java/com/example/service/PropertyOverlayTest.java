@@ -0,0 +1,92 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lombok.Data;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Collections;
+
+public class PropertyOverlayTest {
+
+  private AnnotationConfigApplicationContext context;
+  private PropertyOverlay overlay;
+
+  @Before
+  public void setUp() {
+    context = new AnnotationConfigApplicationContext();
+    context.getEnvironment().getPropertySources().addLast(new MapPropertySource("applicationConfig: [test]",
+        Collections.singletonMap("orders.timeout", "1000")));
+    context.register(TestConfiguration.class, PropertyOverlay.class);
+    context.refresh();
+    overlay = context.getBean(PropertyOverlay.class);
+  }
+
+  @After
+  public void tearDown() {
+    context.close();
+  }
+
+  @Test
+  public void testOnlyBeansBelowTheChangedPrefixAreRebound() {
+    OrderProperties orders = context.getBean(OrderProperties.class);
+    PaymentProperties payments = context.getBean(PaymentProperties.class);
+    payments.setTimeout(42);
+    assertThat(overlay.isBound("orders.retries")).isTrue();
+    assertThat(overlay.isBound("inventory.timeout")).isFalse();
+
+    overlay.apply(Collections.singletonMap("orders.timeout", "2500"));
+    assertThat(orders.getTimeout()).isEqualTo(2500);
+    assertThat(payments.getTimeout()).isEqualTo(42);
+    assertThat(context.getEnvironment().getProperty("orders.timeout")).isEqualTo("2500");
+
+    overlay.apply(Collections.singletonMap("orders.timeout", null));
+    assertThat(orders.getTimeout()).isEqualTo(1000);
+    assertThat(overlay.getOverrides()).isEmpty();
+  }
+
+  @Test
+  public void testInvalidValueRestoresPreviousOverride() {
+    OrderProperties orders = context.getBean(OrderProperties.class);
+    overlay.apply(Collections.singletonMap("orders.timeout", "2500"));
+    try {
+      overlay.apply(Collections.singletonMap("orders.timeout", "soon"));
+    } catch (RuntimeException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Oops! Failed to bind the new value.");
+    }
+    assertThat(orders.getTimeout()).isEqualTo(2500);
+    assertThat(overlay.getOverrides()).containsEntry("orders.timeout", "2500");
+  }
+
+  @Configuration
+  @EnableConfigurationProperties(OrderProperties.class)
+  static class TestConfiguration {
+
+    @Bean
+    @ConfigurationProperties("payments")
+    public PaymentProperties paymentProperties() {
+      return new PaymentProperties();
+    }
+  }
+
+  @Data
+  @ConfigurationProperties("orders")
+  static class OrderProperties {
+    private int timeout;
+    private int retries;
+  }
+
+  @Data
+  static class PaymentProperties {
+    private int timeout;
+  }
+
+}
@@ -0,0 +1,153 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RolloutServiceTest {
+
+  private static final String URL = "order-api/config/order-service-v1";
+  private static final String VALUES_URL = "order-api/config/order-service-v1/diff";
+
+  @Mock
+  private ConfigProps configProps;
+
+  @Mock
+  private DynamicConfigService configService;
+
+  @Mock
+  private ConfigChangeFeed changeFeed;
+
+  @InjectMocks
+  private RolloutService rolloutService;
+
+  private final List<ServiceInstance> instances = new ArrayList<>();
+  private final List<List<String>> pushedTo = new ArrayList<>();
+  private final List<String> pushedBodies = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    rolloutService.init();
+    for (String instanceId : new String[]{"pod-4", "pod-3", "pod-2", "pod-1"}) {
+      InstanceInfo instanceInfo = mock(InstanceInfo.class);
+      when(instanceInfo.getInstanceId()).thenReturn(instanceId);
+      instances.add(new EurekaServiceInstance(instanceInfo));
+    }
+    when(configService.executeOnInstances(anyString(), any(HttpMethod.class), any(), anyListOf(ServiceInstance.class), eq("rollout")))
+        .thenAnswer(invocation -> {
+          List<ServiceInstance> targets = invocation.getArgument(3);
+          if (invocation.getArgument(1) == HttpMethod.PUT) {
+            pushedTo.add(ids(targets));
+            pushedBodies.add(invocation.getArgument(2));
+          }
+          return responses(targets, Collections.singletonMap("ConfigProps.readTimeout", 2000));
+        });
+  }
+
+  @After
+  public void tearDown() {
+    rolloutService.destroy();
+  }
+
+  @Test
+  public void testRolloutCompletesWaveByWave() throws InterruptedException {
+    when(configService.checkHealth(anyListOf(ServiceInstance.class), eq("rollout")))
+        .thenAnswer(invocation -> responses(invocation.getArgument(0), Collections.singletonMap("status", "UP")));
+
+    Rollout rollout = start(Arrays.asList(25, 100));
+
+    assertThat(awaitCompletion(rollout).getStatus()).isEqualTo(Rollout.Status.COMPLETED);
+    assertThat(pushedTo).containsExactly(Collections.singletonList("pod-1"), Arrays.asList("pod-2", "pod-3", "pod-4"));
+    assertThat(rollout.getWaves()).extracting(RolloutWave::getStatus)
+        .containsExactly(RolloutWave.Status.HEALTHY, RolloutWave.Status.HEALTHY);
+    verify(changeFeed).publish("order-service-v1", Collections.singletonMap("ConfigProps.readTimeout", "3000"));
+  }
+
+  @Test
+  public void testUnhealthyWaveRollsBackEveryChangedInstance() throws InterruptedException {
+    when(configService.checkHealth(anyListOf(ServiceInstance.class), eq("rollout"))).thenAnswer(invocation -> {
+      List<ServiceInstance> targets = invocation.getArgument(0);
+      return responses(targets, Collections.singletonMap("status", targets.size() > 1 ? "DOWN" : "UP"));
+    });
+
+    Rollout rollout = start(Arrays.asList(25, 50, 100));
+
+    assertThat(awaitCompletion(rollout).getStatus()).isEqualTo(Rollout.Status.ROLLED_BACK);
+    assertThat(pushedTo).containsExactly(Collections.singletonList("pod-1"), Collections.singletonList("pod-2"),
+        Arrays.asList("pod-1", "pod-2"));
+    assertThat(pushedBodies.get(2)).isEqualTo("ConfigProps.readTimeout:2000");
+    assertThat(rollout.getWaves()).extracting(RolloutWave::getStatus).containsExactly(
+        RolloutWave.Status.ROLLED_BACK, RolloutWave.Status.UNHEALTHY, RolloutWave.Status.PENDING);
+    verify(changeFeed, never()).publish(any(), any());
+  }
+
+  @Test
+  public void testParsePercentages() {
+    assertThat(RolloutService.parsePercentages("10, 50%")).containsExactly(10, 50, 100);
+    assertThat(RolloutService.parsePercentages("100")).containsExactly(100);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testParsePercentagesRejectsDecreasingWaves() {
+    RolloutService.parsePercentages("50,10");
+  }
+
+  private Rollout start(List<Integer> percentages) {
+    return rolloutService.start("order-service-v1", "ConfigProps.readTimeout:3000",
+        Collections.singletonMap("ConfigProps.readTimeout", "3000"), URL, VALUES_URL, instances,
+        Collections.emptyList(), percentages, 0L);
+  }
+
+  private static Rollout awaitCompletion(Rollout rollout) throws InterruptedException {
+    for (int i = 0; i < 500 && rollout.getStatus() == Rollout.Status.RUNNING; i++) {
+      Thread.sleep(10);
+    }
+    return rollout;
+  }
+
+  private static Map<String, InstanceResponse> responses(List<ServiceInstance> targets, Map<String, Object> body) {
+    Map<String, InstanceResponse> responses = new TreeMap<>();
+    for (String instanceId : ids(targets)) {
+      InstanceResponse response = new InstanceResponse();
+      response.setInstanceId(instanceId);
+      response.setStatus(InstanceResponse.Status.OK);
+      response.setBody(body);
+      responses.put(instanceId, response);
+    }
+    return responses;
+  }
+
+  private static List<String> ids(List<ServiceInstance> targets) {
+    List<String> ids = new ArrayList<>();
+    targets.forEach(target -> ids.add(((EurekaServiceInstance) target).getInstanceInfo().getInstanceId()));
+    return ids;
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import com.netflix.appinfo.InstanceInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient.EurekaServiceInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServiceInstanceCacheTest {
+
+  @Mock
+  private ConfigProps configProps;
+
+  @Mock
+  private DiscoveryClient discoveryClient;
+
+  @InjectMocks
+  private ServiceInstanceCache instanceCache;
+
+  private EurekaServiceInstance canary;
+  private EurekaServiceInstance stable;
+
+  @Before
+  public void setUp() {
+    canary = instance("pod-1", "10.0.0.1", "us-east-1a", "true");
+    stable = instance("pod-2", "10.0.0.2", "us-east-1b", "false");
+    when(configProps.getInstanceCacheTtl()).thenReturn(60000L);
+    when(discoveryClient.getInstances("order-service-v1")).thenReturn(Arrays.asList(canary, stable));
+  }
+
+  @Test
+  public void testLookupsAreServedFromTheCacheUntilTheRegistryChanges() {
+    assertThat(instanceCache.getByIpAddress("order-service-v1", "10.0.0.2")).isSameAs(stable);
+    assertThat(instanceCache.getByInstanceId("order-service-v1", "pod-1")).isSameAs(canary);
+    assertThat(instanceCache.getInstances("order-service-v1")).hasSize(2);
+    instanceCache.onHeartbeat(new HeartbeatEvent(this, 1L));
+    instanceCache.onHeartbeat(new HeartbeatEvent(this, 1L));
+    assertThat(instanceCache.getByIpAddress("order-service-v1", "10.0.0.3")).isNull();
+    verify(discoveryClient, times(2)).getInstances("order-service-v1");
+  }
+
+  @Test
+  public void testEmptyResultIsNotCached() {
+    when(discoveryClient.getInstances("bag-service-v1")).thenReturn(Collections.emptyList(),
+        Collections.singletonList(canary));
+    assertThat(instanceCache.getInstances("bag-service-v1")).isEmpty();
+    assertThat(instanceCache.getInstances("bag-service-v1")).containsExactly(canary);
+    assertThat(instanceCache.getInstances("bag-service-v1")).containsExactly(canary);
+    verify(discoveryClient, times(2)).getInstances("bag-service-v1");
+  }
+
+  @Test
+  public void testSelectByZoneAndLabel() {
+    assertThat(instanceCache.select("order-service-v1", "us-east-1a", null)).containsExactly(canary);
+    assertThat(instanceCache.select("order-service-v1", null, Collections.singletonList("canary=false")))
+        .containsExactly(stable);
+    List<ServiceInstance> none = instanceCache.select("order-service-v1", "us-east-1a",
+        Collections.singletonList("canary=false"));
+    assertThat(none).isEmpty();
+    assertThat(instanceCache.select("order-service-v1", null, null)).hasSize(2);
+  }
+
+  private static EurekaServiceInstance instance(String instanceId, String ipAddress, String zone, String canary) {
+    InstanceInfo instanceInfo = mock(InstanceInfo.class);
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("zone", zone);
+    metadata.put("canary", canary);
+    when(instanceInfo.getInstanceId()).thenReturn(instanceId);
+    when(instanceInfo.getIPAddr()).thenReturn(ipAddress);
+    when(instanceInfo.getMetadata()).thenReturn(metadata);
+    return new EurekaServiceInstance(instanceInfo);
+  }
+
+}
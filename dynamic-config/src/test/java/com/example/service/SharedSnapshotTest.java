@@ -0,0 +1,102 @@
+package com.example.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.config.ConfigProps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+public class SharedSnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ConfigProps configProps;
+  private SharedSnapshot writer;
+  private SharedSnapshot reader;
+  private DynamicConfigService readerService;
+
+  @Before
+  public void setUp() throws Exception {
+    configProps = new ConfigProps();
+    configProps.setSharedSnapshotPath(folder.getRoot().toPath().resolve("overrides.shared").toString());
+    configProps.setSharedSnapshotSize(4096);
+    writer = open(mock(DynamicConfigService.class));
+    readerService = mock(DynamicConfigService.class);
+    reader = open(readerService);
+  }
+
+  @After
+  public void tearDown() {
+    writer.destroy();
+    reader.destroy();
+  }
+
+  @Test
+  public void testPublishedOverridesAreAppliedByOtherProcesses() {
+    Map<String, Object> current = new HashMap<>();
+    current.put("ConfigProps.readTimeout", 2000);
+    current.put("ConfigProps.streamOnly", true);
+    when(readerService.getConfigValues(any())).thenReturn(current);
+
+    writer.publish(Collections.singletonMap("ConfigProps.readTimeout", "3000"));
+    writer.publish(Collections.singletonMap("ConfigProps.streamOnly", "true"));
+    reader.poll();
+    verify(readerService).applyOverrides(Collections.singletonMap("ConfigProps.readTimeout", "3000"), "sharedSnapshot");
+  }
+
+  @Test
+  public void testFailedApplyIsRetriedOnNextPoll() {
+    Map<String, String> change = Collections.singletonMap("ConfigProps.readTimeout", "3000");
+    when(readerService.getConfigValues(any())).thenReturn(Collections.emptyMap());
+    when(readerService.applyOverrides(change, "sharedSnapshot")).thenReturn(Collections.emptyMap(), change);
+    when(readerService.getKnownKeys(change.keySet())).thenReturn(new HashSet<>(change.keySet()));
+    writer.publish(change);
+    reader.poll();
+    reader.poll();
+    reader.poll();
+    verify(readerService, times(2)).applyOverrides(change, "sharedSnapshot");
+  }
+
+  @Test
+  public void testSnapshotBeingWrittenIsNotApplied() {
+    writer.publish(Collections.singletonMap("ConfigProps.readTimeout", "3000"));
+    ByteBuffer buffer = (ByteBuffer) ReflectionTestUtils.getField(writer, "buffer");
+    //a writer stopped half way leaves the sequence odd
+    buffer.putLong(8, buffer.getLong(8) + 1);
+    reader.poll();
+    verify(readerService, never()).applyOverrides(any(), anyString());
+
+    writer.publish(Collections.singletonMap("ConfigProps.connectionTimeout", "1500"));
+    assertThat(buffer.getLong(8) % 2).isZero();
+    when(readerService.getConfigValues(any())).thenReturn(Collections.emptyMap());
+    reader.poll();
+    verify(readerService).applyOverrides(any(), anyString());
+  }
+
+  private SharedSnapshot open(DynamicConfigService configService) throws Exception {
+    SharedSnapshot snapshot = new SharedSnapshot();
+    ReflectionTestUtils.setField(snapshot, "configProps", configProps);
+    ReflectionTestUtils.setField(snapshot, "configService", configService);
+    snapshot.init();
+    return snapshot;
+  }
+
+}